@@ -0,0 +1,149 @@
+package agents;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import benchmarks.jmh.Simulations;
+import sim.field.grid.Grid2D;
+import sim.field.grid.SparseGrid2D;
+import sim.util.Bag;
+import simulation.Engine;
+import simulation.PDWASim;
+
+/**
+ * Microbenchmarks for the agent engine's hot paths: partner selection (scanning and sampling the dense occupancy index, and by gathering a Bag of neighbors), one game, one move, and the observer's per-step work. Each call
+ * works on the next agent of a population that has been run for a while, so the neighborhoods are realistic. This lives in the agents package so it can reach the package-private methods.
+ * <p>
+ * A whole agent turn ({@link Agent#step}) can only be taken once per agent per step, so it is measured by {@link benchmarks.jmh.SimulationBenchmark}, which reports agent turns per second. Placing agents is
+ * measured by {@link PlacementBenchmark}.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class AgentBenchmark {
+
+	private static final int SETTLE_STEPS = 50;
+
+	@Param({ "100", "300", "1000" })
+	public int gridSize;
+
+	@Param({ "0.05", "0.2" })
+	public double density;
+
+	@Param({ "1", "2", "5" })
+	public int playRadius;
+
+	private PDWASim sim;
+	private SparseGrid2D space;
+	private Agent[] agents;
+	private Agent[] players;		// agents with an adjacent partner, paired with partners
+	private Agent[] partners;
+	private int next;
+	private int nextPair;
+	private int game;
+
+	@Setup(Level.Trial)
+	public void setUp() {
+		sim = Simulations.make(1, gridSize, density, playRadius, Engine.AGENTS, true);
+		for (int i = 0; i < SETTLE_STEPS && sim.schedule.step(sim); i++) {
+		}
+		space = sim.acquireSpace();
+		Bag all = space.allObjects;
+		agents = new Agent[all.numObjs];
+		for (int i = 0; i < agents.length; i++) {
+			agents[i] = (Agent)all.objs[i];
+		}
+		List<Agent> p = new ArrayList<>();
+		List<Agent> q = new ArrayList<>();
+		for (Agent a : agents) {
+			Agent b = a.pickPartner();
+			if (b != null) {
+				p.add(a);
+				q.add(b);
+			}
+		}
+		if (p.isEmpty()) {
+			throw new RuntimeException("No agent has a partner at this density");
+		}
+		players = p.toArray(new Agent[0]);
+		partners = q.toArray(new Agent[0]);
+		return;
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		sim.finish();
+		return;
+	}
+
+	private Agent nextAgent() {
+		if (next == agents.length) {
+			next = 0;
+		}
+		return agents[next++];
+	}
+
+	@Benchmark
+	public Agent pickPartner() {
+		return nextAgent().pickPartner();
+	}
+
+	@Benchmark
+	public Agent samplePartner() {
+		return nextAgent().samplePartner();
+	}
+
+	@Benchmark
+	public Agent pickPartnerBag() {
+		Agent a = nextAgent();
+		return a.pickPartner(space.getMooreNeighbors(a.getX(), a.getY(), playRadius, Grid2D.TOROIDAL, true));
+	}
+
+	/**
+	 * One game, cycling through all four combinations of actions.
+	 */
+	@Benchmark
+	public double playPD() {
+		if (nextPair == players.length) {
+			nextPair = 0;
+		}
+		Agent a = players[nextPair];
+		int mine = (game & 1) == 0 ? StrategyTable.COOPERATE : StrategyTable.DEFECT;
+		int theirs = (game & 2) == 0 ? StrategyTable.COOPERATE : StrategyTable.DEFECT;
+		a.playPD(partners[nextPair++], mine, theirs);
+		game++;
+		return a.getResources();
+	}
+
+	@Benchmark
+	public int move() {
+		Agent a = nextAgent();
+		a.move();
+		return a.getX();
+	}
+
+	@Benchmark
+	public void observerStep() {
+		sim.acquireObserver().step(sim);
+		return;
+	}
+
+}
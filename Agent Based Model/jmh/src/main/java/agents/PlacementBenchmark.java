@@ -0,0 +1,65 @@
+package agents;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import benchmarks.jmh.Simulations;
+import simulation.Engine;
+import simulation.PDWASim;
+
+/**
+ * Placing a new agent at a random empty location with {@link PDWASim#makeAgent(Strategy)}, at increasing densities. Each new agent is removed again so the density stays the same, and its object is reused
+ * for the next one, as in steady birth and death churn.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class PlacementBenchmark {
+
+	@Param({ "100", "1000" })
+	public int gridSize;
+
+	@Param({ "0.05", "0.2", "0.8" })
+	public double density;
+
+	@Param({ "false", "true" })
+	public boolean denseOccupancy;
+
+	private PDWASim sim;
+
+	@Setup(Level.Iteration)
+	public void setUp() {
+		sim = Simulations.make(1, gridSize, density, 1, Engine.AGENTS, denseOccupancy);
+		return;
+	}
+
+	@TearDown(Level.Iteration)
+	public void tearDown() {
+		sim.finish();
+		return;
+	}
+
+	@Benchmark
+	public Agent makeAgent() {
+		Agent a = sim.makeAgent(Strategy.NAIVE_C);
+		a.remove();
+		return a;
+	}
+
+}
@@ -0,0 +1,206 @@
+package agents;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import agents.Agent.Action;
+
+/**
+ * Selecting a response, as every agent does in every game, over a population mixing the given number of strategies in random order: by the {@link StrategyTable} lookup the agents use, by a switch on an
+ * enum of the strategies as the enum-based code did, and by calling each strategy's {@link Strategy.Rule} directly. With more than the ten built-in strategies, the extra ones are registered as copies of the
+ * built-in rules, and the switch is over a 50-constant enum whose cases map each back to the rule it copies, so all three do the same work and only the dispatch differs. Both switches are on real enums, so
+ * they go through the compiler's ordinal lookup table before the jump, as the enum-based code did. For comparison, {@link #historyTable()} selects the response of a memory-6 strategy from a
+ * random history of six games.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class StrategyDispatchBenchmark {
+
+	private static final int GAMES = 1 << 12;
+	private static final int BUILT_IN = 10;
+
+	/**
+	 * The built-in strategies, as the enum the strategies used to be.
+	 */
+	enum BuiltIn {
+		NAIVE_C, NAIVE_D, WALKAWAY_C, WALKAWAY_D, TFT_STATIONARY, TFT_MOBILE, PAVLOV_STATIONARY, PAVLOV_MOBILE, REALISTIC_TFT, RETREAT
+	}
+
+	/**
+	 * Fifty strategies, as an enum would have to hold them; each copies the built-in strategy with the same ordinal modulo ten.
+	 */
+	enum Wide {
+		S0, S1, S2, S3, S4, S5, S6, S7, S8, S9,
+		S10, S11, S12, S13, S14, S15, S16, S17, S18, S19,
+		S20, S21, S22, S23, S24, S25, S26, S27, S28, S29,
+		S30, S31, S32, S33, S34, S35, S36, S37, S38, S39,
+		S40, S41, S42, S43, S44, S45, S46, S47, S48, S49
+	}
+
+	private static final BuiltIn[] BUILT_INS = BuiltIn.values();
+	private static final Wide[] WIDES = Wide.values();
+
+	@Param({ "10", "50" })		// at most 50, the size of the Wide enum
+	public int strategies;
+
+	private int[] strategy = new int[GAMES];
+	private BuiltIn[] builtIn = new BuiltIn[GAMES];		// the built-in strategy each one copies
+	private Wide[] wide = new Wide[GAMES];
+	private boolean[] defected = new boolean[GAMES];
+	private int[] lastSelf = new int[GAMES];
+	private int[] lastOther = new int[GAMES];
+	private int[] history = new int[GAMES];
+	private Strategy.Rule[] rules;
+	private int memory6;
+	private int next;
+
+	@Setup(Level.Trial)
+	public void setUp() {
+		for (int s = Strategy.count(); s < strategies; s++) {
+			Strategy copied = Strategy.forOrdinal(s % BUILT_IN);
+			Strategy.register("COPY_" + s, "nCopy" + s, copied.getRule(), copied.movesWithoutPartner(), copied.getRed(), copied.getGreen(), copied.getBlue());
+		}
+		rules = new Strategy.Rule[strategies];
+		for (int s = 0; s < strategies; s++) {
+			rules[s] = Strategy.forOrdinal(s).getRule();
+		}
+		memory6 = Strategy.registerMemory("MAJORITY_6", "nMajority6", StrategyTable.MAX_MEMORY, Strategy.defectMask(StrategyTable.MAX_MEMORY, (games, self, other) -> 2 * Integer.bitCount(other) > games),
+				false, true, true, true, 1, 0, 0).ordinal();
+		Random random = new Random(1);
+		for (int i = 0; i < GAMES; i++) {
+			strategy[i] = random.nextInt(strategies);
+			builtIn[i] = BUILT_INS[strategy[i] % BUILT_IN];
+			wide[i] = WIDES[strategy[i]];
+			defected[i] = random.nextInt(10) == 0;
+			lastSelf[i] = random.nextInt(3);
+			lastOther[i] = random.nextInt(3);
+			history[i] = StrategyTable.EMPTY_HISTORY;
+			for (int g = 0; g < StrategyTable.MAX_MEMORY; g++) {
+				history[i] = StrategyTable.remember(memory6, history[i], random.nextInt(2), random.nextInt(2));
+			}
+		}
+		return;
+	}
+
+	private int nextGame() {
+		next = (next + 1) & (GAMES - 1);
+		return next;
+	}
+
+	@Benchmark
+	public int table() {
+		int i = nextGame();
+		return StrategyTable.response(strategy[i], defected[i], lastSelf[i], lastOther[i], StrategyTable.EMPTY_HISTORY);
+	}
+
+	@Benchmark
+	public int enumSwitch() {
+		int i = nextGame();
+		Action self = StrategyTable.toAction(lastSelf[i]);
+		Action other = StrategyTable.toAction(lastOther[i]);
+		if (strategies <= BUILT_IN) {
+			return builtInSwitch(builtIn[i], defected[i], self, other);
+		}
+		return wideSwitch(wide[i], defected[i], self, other);
+	}
+
+	@Benchmark
+	public int ruleCall() {
+		int i = nextGame();
+		return rules[strategy[i]].respond(defected[i], StrategyTable.toAction(lastSelf[i]), StrategyTable.toAction(lastOther[i]));
+	}
+
+	@Benchmark
+	public int historyTable() {
+		int i = nextGame();
+		return StrategyTable.response(memory6, false, StrategyTable.NOTHING, StrategyTable.NOTHING, history[i]);
+	}
+
+	/**
+	 * The built-in rules as a switch on the strategy, in the form the enum-based code evaluated them on every game.
+	 */
+	private static int builtInSwitch(BuiltIn strategy, boolean defected, Action self, Action other) {
+		switch (strategy) {
+			case NAIVE_C:
+				return StrategyTable.respond(Action.COOPERATE, false, false, true);
+			case NAIVE_D:
+				return StrategyTable.respond(Action.DEFECT, false, false, true);
+			case WALKAWAY_C:
+				return StrategyTable.respond(Action.COOPERATE, false, true, true);
+			case WALKAWAY_D:
+				return StrategyTable.respond(Action.DEFECT, false, true, true);
+			case TFT_STATIONARY:
+				return StrategyTable.respond(Strategy.titForTat(other), false, false, false);
+			case TFT_MOBILE:
+				return StrategyTable.respond(Strategy.titForTat(other), false, false, true);
+			case PAVLOV_STATIONARY:
+				return StrategyTable.respond(Strategy.pavlov(self, other), false, false, false);
+			case PAVLOV_MOBILE:
+				return StrategyTable.respond(Strategy.pavlov(self, other), false, false, true);
+			case REALISTIC_TFT:
+				return StrategyTable.respond(Strategy.titForTat(other), false, true, true);
+			case RETREAT:
+				if (defected) {
+					return StrategyTable.respond(Action.DEFECT, true, true, true);
+				}
+				if (other == Action.DEFECT) {
+					return StrategyTable.markDefected(StrategyTable.respond(Action.DEFECT, false, true, true));
+				}
+				return StrategyTable.respond(Action.COOPERATE, false, true, true);
+		}
+		throw new RuntimeException("This strategy has not been implemented: " + strategy);
+	}
+
+	/**
+	 * A switch over fifty strategies, each case applying the built-in rule it copies.
+	 */
+	private static int wideSwitch(Wide strategy, boolean defected, Action self, Action other) {
+		switch (strategy) {
+			case S0: case S10: case S20: case S30: case S40:
+				return StrategyTable.respond(Action.COOPERATE, false, false, true);
+			case S1: case S11: case S21: case S31: case S41:
+				return StrategyTable.respond(Action.DEFECT, false, false, true);
+			case S2: case S12: case S22: case S32: case S42:
+				return StrategyTable.respond(Action.COOPERATE, false, true, true);
+			case S3: case S13: case S23: case S33: case S43:
+				return StrategyTable.respond(Action.DEFECT, false, true, true);
+			case S4: case S14: case S24: case S34: case S44:
+				return StrategyTable.respond(Strategy.titForTat(other), false, false, false);
+			case S5: case S15: case S25: case S35: case S45:
+				return StrategyTable.respond(Strategy.titForTat(other), false, false, true);
+			case S6: case S16: case S26: case S36: case S46:
+				return StrategyTable.respond(Strategy.pavlov(self, other), false, false, false);
+			case S7: case S17: case S27: case S37: case S47:
+				return StrategyTable.respond(Strategy.pavlov(self, other), false, false, true);
+			case S8: case S18: case S28: case S38: case S48:
+				return StrategyTable.respond(Strategy.titForTat(other), false, true, true);
+			case S9: case S19: case S29: case S39: case S49:
+				if (defected) {
+					return StrategyTable.respond(Action.DEFECT, true, true, true);
+				}
+				if (other == Action.DEFECT) {
+					return StrategyTable.markDefected(StrategyTable.respond(Action.DEFECT, false, true, true));
+				}
+				return StrategyTable.respond(Action.COOPERATE, false, true, true);
+		}
+		throw new RuntimeException("This strategy has not been implemented: " + strategy);
+	}
+
+}
@@ -0,0 +1,85 @@
+package benchmarks.jmh;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import simulation.Engine;
+import simulation.PDWASim;
+
+/**
+ * Whole-simulation throughput: steps per second, and agent turns per second, across grid sizes, densities, play radii and engines. Every iteration starts the same simulation afresh from the same seed, so
+ * iterations (and versions) do the same work and can be compared directly.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class SimulationBenchmark {
+
+	@Param({ "100", "300", "1000" })
+	public int gridSize;
+
+	@Param({ "0.05", "0.2" })
+	public double density;
+
+	@Param({ "1", "2" })
+	public int playRadius;
+
+	@Param({ "AGENTS", "ARRAYS" })
+	public Engine engine;
+
+	@Param({ "true" })
+	public boolean denseOccupancy;
+
+	private PDWASim sim;
+
+	/**
+	 * Agent turns taken, reported by JMH as a rate alongside steps per second.
+	 */
+	@State(Scope.Thread)
+	@AuxCounters(AuxCounters.Type.OPERATIONS)
+	public static class Turns {
+		public long agentSteps;
+
+		@Setup(Level.Iteration)
+		public void clear() {
+			agentSteps = 0;
+			return;
+		}
+	}
+
+	@Setup(Level.Iteration)
+	public void setUp() {
+		sim = Simulations.make(1, gridSize, density, playRadius, engine, denseOccupancy);
+		return;
+	}
+
+	@TearDown(Level.Iteration)
+	public void tearDown() {
+		sim.finish();
+		return;
+	}
+
+	@Benchmark
+	public boolean step(Turns turns) {
+		turns.agentSteps += sim.acquirePopulation().getTotal();
+		return sim.schedule.step(sim);
+	}
+
+}
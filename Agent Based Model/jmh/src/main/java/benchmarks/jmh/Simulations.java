@@ -0,0 +1,42 @@
+package benchmarks.jmh;
+
+import output.NullSink;
+import simulation.Engine;
+import simulation.PDWASim;
+
+/**
+ * Builds the simulations the benchmarks run on.
+ */
+public class Simulations {
+
+	private Simulations() {
+	}
+
+	/**
+	 * Make and start a headless simulation on a square grid, filled to the given density with equal numbers of the four default strategies.
+	 * @param seed random seed
+	 * @param gridSize width and height of the grid
+	 * @param density fraction of cells occupied at the start
+	 * @param playRadius radius within which agents find partners
+	 * @param engine engine to run
+	 * @param denseOccupancy whether the agent engine uses the dense occupancy index
+	 * @return the started simulation
+	 */
+	public static PDWASim make(long seed, int gridSize, double density, int playRadius, Engine engine, boolean denseOccupancy) {
+		int each = Math.max(1, (int)Math.round(gridSize * (double)gridSize * density / 4));
+		PDWASim sim = new PDWASim(seed);
+		sim.setGridWidth(gridSize);
+		sim.setGridHeight(gridSize);
+		sim.setnNaiveC(each);
+		sim.setnNaiveD(each);
+		sim.setnWalkawayC(each);
+		sim.setnWalkawayD(each);
+		sim.setPlayRadius(playRadius);
+		sim.setEngine(engine);
+		sim.setDenseOccupancy(denseOccupancy);
+		sim.attachSink(new NullSink());
+		sim.start();
+		return sim;
+	}
+
+}
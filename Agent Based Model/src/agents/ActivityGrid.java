@@ -0,0 +1,71 @@
+package agents;
+
+import java.util.Arrays;
+
+/**
+ * Tracks where agents arrive, so that isolated agents can sleep instead of searching an empty neighborhood every step. The grid is divided into square blocks, and each block holds the last step in which an
+ * agent arrived (moved or was born) within the play radius of any of its cells. An agent that found no other agent within the play radius has nothing new nearby for as long as its block's stamp stays older
+ * than that step, which it can check with a single read. Agents leaving or dying never make an isolated agent less isolated, so they are not tracked.
+ */
+public class ActivityGrid {
+
+	private static final int MIN_SIDE = 4;
+
+	private final int width;
+	private final int height;
+	private final int radius;
+	private final int side;		// of a block, at least the width of a neighborhood so an arrival stamps few blocks
+	private final int blocksX;
+	private final long[] stamps;
+
+	/**
+	 * Make a grid in which nothing has arrived yet.
+	 * @param width grid width
+	 * @param height grid height
+	 * @param radius play radius the agents are isolated within
+	 */
+	public ActivityGrid(int width, int height, int radius) {
+		this.width = width;
+		this.height = height;
+		this.radius = radius;
+		side = Math.max(MIN_SIDE, 2 * radius + 1);
+		blocksX = (width + side - 1) / side;
+		stamps = new long[blocksX * ((height + side - 1) / side)];
+		Arrays.fill(stamps, -1);
+	}
+
+	/**
+	 * Record an agent arriving at a location: every block with a cell within the play radius of it, wrapping toroidally, is stamped with the step.
+	 * @param x x-coordinate
+	 * @param y y-coordinate
+	 * @param step current step
+	 */
+	public void arrived(int x, int y, long step) {
+		for (int cx = x - radius; cx <= x + radius; ) {
+			int wx = Math.floorMod(cx, width);
+			for (int cy = y - radius; cy <= y + radius; ) {
+				int wy = Math.floorMod(cy, height);
+				stamps[(wy / side) * blocksX + wx / side] = step;
+				cy += Math.min(side - wy % side, height - wy);		// on to the next block, or back to the top of the grid
+			}
+			cx += Math.min(side - wx % side, width - wx);
+		}
+		return;
+	}
+
+	/**
+	 * Has no agent arrived within the play radius of a location since the given step (including during that step)?
+	 * @param x x-coordinate
+	 * @param y y-coordinate
+	 * @param since step in which the location was last seen to be isolated
+	 * @return true if the location is still isolated
+	 */
+	public boolean isQuiet(int x, int y, long since) {
+		return stamps[(y / side) * blocksX + x / side] < since;
+	}
+
+	public int getRadius() {
+		return radius;
+	}
+
+}
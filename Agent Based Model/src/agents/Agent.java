@@ -1,60 +1,133 @@
 package agents;
 
-import java.util.Random;
+import java.nio.ByteBuffer;
 
-import agents.Agent.Action;
-import agents.Agent.StrategySet;
 import sim.engine.SimState;
 import sim.engine.Steppable;
-import sim.engine.Stoppable;
 import sim.field.grid.Grid2D;
 import sim.field.grid.SparseGrid2D;
 import sim.util.Bag;
 import simulation.PDWASim;
+import simulation.PartnerSelection;
 
 public class Agent implements Steppable {
 	
-	private boolean played;
+	private long playedStep = -1;	// the last step in which this agent played, so it has played this step if this equals the current step
 	private int x, y;
 	private int dirx, diry;
 	private double resources;
 	private int id;
-	private GameMemory lastGame;
+	private int lastSelf, lastOther;	// memory of the last game, as action ordinals
+	private int history = StrategyTable.EMPTY_HISTORY;		// memory of the last games, for memory-n strategies; see StrategyTable
 	
 	private Strategy strategy;
-	private Stoppable stopper;
 	
 	private PDWASim sim;
 	private SparseGrid2D space;
-	
-	private static int nextId = 0;
-	
-	private boolean defected = false;
+	private OccupancyGrid occupancy;	// null unless the dense occupancy index is switched on
+	private AgentSlots slots;
+	private int slot = -1;
+	private PopulationRegistry population;
+	private PhaseTimes times;
+	private AgentScheduler scheduler;
+	int schedulePos;		// position in the scheduler, or -1 once dead
+	int scheduledEpoch;		// scheduler epoch in which this agent was born
+	private boolean alive;
+	private ActivityGrid activity;		// null unless activity tracking is switched on
+	private long asleepSince = -1;		// step in which this agent last found itself isolated, if it is asleep, or -1 if it is awake
+	private ClusterTracker clusters;		// null unless clusters are tracked
+	
+	private boolean defected;
 	
 	public Agent(PDWASim sim, int x, int y, Strategy strategy) {
 		this.sim = sim;
 		space = sim.acquireSpace();
+		occupancy = sim.acquireOccupancy();
+		slots = sim.acquireAgentSlots();
+		population = sim.acquirePopulation();
+		times = sim.acquirePhaseTimes();
+		scheduler = sim.acquireAgentScheduler();
+		activity = sim.acquireActivity();
+		clusters = sim.acquireClusterTracker();
+		init(x, y, strategy);
+	}
+	
+	/**
+	 * Set up this agent as newly born, whether it is brand new or a dead agent being reused.
+	 * @param x x-coordinate
+	 * @param y y-coordinate
+	 * @param strategy game strategy
+	 */
+	void init(int x, int y, Strategy strategy) {
 		this.x = x;
 		this.y = y;
 		randomizeMovement();
 		this.strategy = strategy;
 		resources = sim.random.nextInt(40) + 10;	// uniformly distributed in [10, 49]
-		played = false;
-		lastGame = new GameMemory(Action.NOTHING, Action.NOTHING);
-		id = nextId++;
+		lastSelf = lastOther = StrategyTable.NOTHING;
+		history = StrategyTable.EMPTY_HISTORY;
+		playedStep = -1;
+		asleepSince = -1;
+		defected = false;
+		alive = true;
+		slot = -1;
+		id = sim.acquireNextAgentId();
+		population.born(strategy.ordinal(), resources);
+		return;
 	}
 	
 	@Override
 	public void step(SimState state) {
-		if (played) {					// if we have been played as a partner already in this move, we're done
+		long now = sim.schedule.getSteps();
+		if (playedStep == now) {		// if we have been played as a partner already in this move, we're done
 			return;
 		}
-		Bag neighbors = space.getMooreNeighbors(x, y, sim.getPlayRadius(), Grid2D.TOROIDAL, true);
-		Agent partner = pickPartner(neighbors);
+		if (asleepSince >= 0) {
+			if (activity.isQuiet(x, y, asleepSince) && sim.getPlayRadius() == activity.getRadius()) {
+				sleep();
+				return;
+			}
+			asleepSince = -1;
+		}
+		long t = times.on ? System.nanoTime() : 0;
+		Agent partner;
+		boolean isolated;
+		if (occupancy != null) {
+			partner = sim.getPartnerSelection() == PartnerSelection.SAMPLED ? samplePartner() : pickPartner();
+			isolated = partner == null && activity != null && occupancy.countMoore(x, y, sim.getPlayRadius()) == 1;		// only counted when it might be asleep
+		} else {
+			Bag neighbors = space.getMooreNeighbors(x, y, sim.getPlayRadius(), Grid2D.TOROIDAL, true);
+			partner = pickPartner(neighbors);
+			isolated = neighbors != null && neighbors.numObjs == 1;
+		}
+		if (times.on) {
+			times.add(PhaseTimes.PARTNER, t);
+		}
 		if (playAndDecideMove(partner)) {
 			moveLogic();
 		}
 		updateLifeEvents();
+		if (isolated && activity != null && !StrategyTable.movesWithoutPartner(strategy.ordinal()) && alive && resources < 100 && sim.getPlayRadius() == activity.getRadius()) {
+			asleepSince = now;		// stationary, and with resources that will not change until a partner comes along
+		}
+		return;
+	}
+	
+	/**
+	 * Take the turn of an agent that has found itself isolated and stayed so, without looking at its neighborhood: it would find no partner, and if it moves without a partner it is not asleep, so nothing would
+	 * happen but the partner search's draws from the random number generator. Those are made all the same, so that the run goes on exactly as it would if this agent were awake.
+	 */
+	private void sleep() {
+		if (occupancy != null && sim.getPartnerSelection() == PartnerSelection.SAMPLED) {
+			int cells = occupancy.spanX(sim.getPlayRadius()) * occupancy.spanY(sim.getPlayRadius());
+			if (cells > 1) {
+				for (int i = 0; i < PartnerSelection.MAX_PROBES; i++) {
+					sim.random.nextInt(cells - 1);
+				}
+			}
+		} else {
+			sim.random.nextInt(1);		// the neighborhood holds only this agent
+		}
 		return;
 	}
 	
@@ -71,24 +144,38 @@ public class Agent implements Steppable {
 	 * Everything necessary for movement. Includes directional adjustments and the move method itself.
 	 */
 	private void moveLogic() {
+		long t = times.on ? System.nanoTime() : 0;
 		if (sim.random.nextBoolean(sim.getProbRandomMove())) {
 			randomizeMovement();
 		}
 		move();
+		if (times.on) {
+			times.add(PhaseTimes.MOVE, t);
+		}
 		return;
 	}
 	
 	/**
-	 * Move the agent to a new location based on its current direction, wrapping for toroidal space and avoiding collisions with other agents.
+	 * Move the agent to a new location based on its current direction, wrapping for toroidal space and avoiding collisions with other agents. Not part of the API: package-private only so AgentBenchmark can time a move on its own; outside
+	 * benchmarks it is called only from {@link #step(SimState)}.
 	 */
-	private void move() {
+	void move() {
 		int tempx = space.stx(x + dirx);
 		int tempy = space.sty(y + diry);
-		if (space.getObjectsAtLocation(tempx, tempy) != null) {
+		if (occupancy != null ? !occupancy.isEmpty(tempx, tempy) : space.getObjectsAtLocation(tempx, tempy) != null) {
 			dirx = -dirx;
 			diry = -diry;
 			tempx = x;
 			tempy = y;
+		} else if (occupancy != null) {
+			occupancy.move(x, y, tempx, tempy);
+		}
+		if (activity != null && (tempx != x || tempy != y)) {
+			activity.arrived(tempx, tempy, sim.schedule.getSteps());
+		}
+		if (clusters != null && (tempx != x || tempy != y)) {
+			clusters.touched(x, y);
+			clusters.touched(tempx, tempy);
 		}
 		x = tempx;
 		y = tempy;
@@ -97,14 +184,16 @@ public class Agent implements Steppable {
 	}
 	
 	/**
-	 * Pick a random neighbor to play with. Only returns an agent that has not yet played this round. Will return null if there are no available agents.
+	 * Pick a random neighbor to play with. Only returns an agent that has not yet played this round. Will return null if there are no available agents. Not part of the API;
+	 * package-private for AgentBenchmark, which compares it with {@link #pickPartner()}.
 	 * @param candidates agents to pick from; can include self (but self will not be returned)
 	 * @return a random, unplayed agent from among the candidates, or null if there aren't any
 	 */
-	private Agent pickPartner(Bag candidates) {
+	Agent pickPartner(Bag candidates) {
 		if (candidates == null || candidates.isEmpty()) {			// no neighbors, no partner to play with
 			return null;
 		}
+		long now = sim.schedule.getSteps();
 		int size = candidates.numObjs;
 		int rand = sim.random.nextInt(size);
 		for (int i = rand; i < size; i++) {
@@ -113,7 +202,7 @@ public class Agent implements Steppable {
 				continue;
 			}
 			Agent a = (Agent)o;
-			if (!a.played) {
+			if (a.playedStep != now) {
 				return a;
 			}
 		}
@@ -123,7 +212,7 @@ public class Agent implements Steppable {
 				continue;
 			}
 			Agent a = (Agent)o;
-			if (!a.played) {
+			if (a.playedStep != now) {
 				return a;
 			}
 		}
@@ -131,240 +220,172 @@ public class Agent implements Steppable {
 	}
 	
 	/**
-	 * Play the dictator game with a partner, returning true if the agent should move due to strategy or because no partner was found. The partner agent will automatically be played and moved and its played flag will
-	 * be set so it can not be played again in this step. If null is passed, this will be interpreted as indicating no partners were available, and the appropriate value for movement based on the agent's strategy will
-	 * be returned.
-	 * @param partner agent to play with or null if none are available
-	 * @return true if this agent should move
-	 */
-	private boolean playAndDecideMove(Agent partner) {
-		if (partner == null) {
-			lastGame = new GameMemory(Action.NOTHING, Action.NOTHING);	// nothing happens if there are no partners
-			switch (strategy) {
-				case NAIVE_C:
-				case NAIVE_D:
-				case PAVLOV_MOBILE:
-				case TFT_MOBILE:
-				case WALKAWAY_C:
-				case WALKAWAY_D:
-				case REALISTIC_TFT:
-				case RETREAT:
-					return true;			// all of the preceding strategies move if no partner is found
-				case PAVLOV_STATIONARY:
-				case TFT_STATIONARY:
-					return false;			// these strategies do nothing if no partner is found
+	 * Pick a random neighbor to play with using the dense occupancy index. Agents are considered in the same order as in the Bag that MASON's getMooreNeighbors returns, so this picks exactly the agent that
+	 * {@link #pickPartner(Bag)} would, without gathering the neighbors into a Bag first. Not part of the API; package-private for AgentBenchmark.
+	 * @return a random, unplayed agent from among the neighbors, or null if there aren't any
+	 */
+	Agent pickPartner() {
+		long now = sim.schedule.getSteps();
+		int r = sim.getPlayRadius();
+		int rand = sim.random.nextInt(occupancy.countMoore(x, y, r));	// the count includes ourselves, so is never 0
+		Agent wrapped = null;				// first candidate before the random start, in case there are none after it
+		int columns = occupancy.spanX(r);		// as many columns and rows as getMooreNeighbors visits, so no cell is seen twice however large the radius
+		int rows = occupancy.spanY(r);
+		int k = 0;
+		for (int i = 0; i < columns; i++) {
+			int cx = occupancy.stx(x - r + i);
+			for (int j = 0; j < rows; j++) {
+				int o = occupancy.get(cx, occupancy.sty(y - r + j));
+				if (o == OccupancyGrid.EMPTY) {
+					continue;
+				}
+				Agent a = slots.get(o);
+				if (a != this && a.playedStep != now) {
+					if (k >= rand) {
+						return a;
+					}
+					if (wrapped == null) {
+						wrapped = a;
+					}
+				}
+				k++;
 			}
-			throw new RuntimeException("This agent is using a strategy that has not been implemented: " + strategy);
-		}
-		StrategySet mySet = selectAction(partner);
-		StrategySet partnerSet = partner.selectAction(this);
-		Action sAct = mySet.action;
-		Action pAct = partnerSet.action;
-		playPD(partner, sAct, pAct);
-		// the partner will need to move now if they are going to move at all, since they are now marked played (and might have already taken their step anyway)
-		if (partnerSet.moveCooperate && sAct.equals(Action.COOPERATE) || partnerSet.moveDefect && sAct.equals(Action.DEFECT) || partnerSet.moveNothing && sAct.equals(Action.NOTHING)) {
-			partner.moveLogic();
 		}
-		// now we return our own decision
-		return mySet.moveCooperate && pAct.equals(Action.COOPERATE) || mySet.moveDefect && pAct.equals(Action.DEFECT) || mySet.moveNothing && pAct.equals(Action.NOTHING);
-	}
-	
-	/**
-	 * Returns this agent's action set (including game strategy and movement options given partner's action) based on this agent's strategy and history.
-	 * @param partner the partner this agent will be playing with
-	 * @return strategy set for this move
-	 */
-	private StrategySet selectAction(Agent partner) {	// perhaps partner will be useful for future strategies
-		switch (strategy) {
-			case NAIVE_C:
-				return playNaiveC();
-			case NAIVE_D:
-				return playNaiveD();
-			case PAVLOV_MOBILE:
-				return playPavlovMobile();
-			case PAVLOV_STATIONARY:
-				return playPavlovStationary();
-			case TFT_MOBILE:
-				return playTFTMobile();
-			case TFT_STATIONARY:
-				return playTFTStationary();
-			case WALKAWAY_C:
-				return playWalkawayC();
-			case WALKAWAY_D:
-				return playWalkawayD();
-			case REALISTIC_TFT:
-				return playRealisticTFT();
-			case RETREAT:
-				return playRetreat();
-		}
-		throw new RuntimeException("This agent is using a strategy that has not been implemented: " + strategy);
-	}
-	
-	/**
-	 * Return strategy set for naive cooperator.
-	 * @return strategy set
-	 */
-	private StrategySet playNaiveC() {
-		return new StrategySet(Action.COOPERATE, false, false, true);
-	}
-	
-	/**
-	 * Return strategy set for naive defector.
-	 * @return strategy set
-	 */
-	private StrategySet playNaiveD() {
-		return new StrategySet(Action.DEFECT, false, false, true);
+		return wrapped;
 	}
 	
 	/**
-	 * Return strategy set for mobile PAVLOV.
-	 * @return strategy set
+	 * Pick a random neighbor to play with, uniformly from among the unplayed agents within the play radius, using the dense occupancy index. Random cells of the neighborhood are probed first; if they all miss,
+	 * the candidates are counted and one picked at random. See {@link PartnerSelection#SAMPLED}. The neighborhood is the clamped one of {@link OccupancyGrid#countMoore(int, int, int)}, so at a radius as
+	 * large as the grid every cell is still drawn with the same probability.
+	 * @return a random, unplayed agent from among the neighbors, or null if there aren't any
 	 */
-	private StrategySet playPavlovMobile() {
-		if (lastGame.self.equals(Action.COOPERATE) && lastGame.other.equals(Action.COOPERATE)) {
-			return new StrategySet(Action.COOPERATE, false, false, true);
-		}
-		if (lastGame.self.equals(Action.COOPERATE) && lastGame.other.equals(Action.DEFECT)) {
-			return new StrategySet(Action.DEFECT, false, false, true);
+	Agent samplePartner() {
+		long now = sim.schedule.getSteps();
+		int r = sim.getPlayRadius();
+		int rows = occupancy.spanY(r);
+		int cells = occupancy.spanX(r) * rows;
+		if (cells == 1) {
+			return null;
 		}
-		if (lastGame.self.equals(Action.DEFECT) && lastGame.other.equals(Action.COOPERATE)) {
-			return new StrategySet(Action.DEFECT, false, false, true);
+		int center = r % occupancy.spanX(r) * rows + r % rows;		// our own cell, which is in the middle unless the neighborhood was clamped
+		for (int i = 0; i < PartnerSelection.MAX_PROBES; i++) {
+			int k = sim.random.nextInt(cells - 1);		// any cell but our own
+			if (k >= center) {
+				k++;
+			}
+			int o = occupancy.get(occupancy.stx(x - r + k / rows), occupancy.sty(y - r + k % rows));
+			if (o != OccupancyGrid.EMPTY && slots.get(o).playedStep != now) {
+				return slots.get(o);
+			}
 		}
-		if (lastGame.self.equals(Action.DEFECT) && lastGame.other.equals(Action.DEFECT)) {
-			return new StrategySet(Action.COOPERATE, false, false, true);
-		}		// else there must be a NOTHING in one of the spots, which implies ... 
-		return new StrategySet(Action.COOPERATE, false, false, true);
-	}
-	
-	/**
-	 * Return strategy set for stationary PAVLOV.
-	 * @return strategy set
-	 */
-	private StrategySet playPavlovStationary() {
-		if (lastGame.self.equals(Action.COOPERATE) && lastGame.other.equals(Action.COOPERATE)) {
-			return new StrategySet(Action.COOPERATE, false, false, false);
+		int count = 0;
+		for (int k = 0; k < cells; k++) {
+			int o = occupancy.get(occupancy.stx(x - r + k / rows), occupancy.sty(y - r + k % rows));
+			if (k != center && o != OccupancyGrid.EMPTY && slots.get(o).playedStep != now) {
+				count++;
+			}
 		}
-		if (lastGame.self.equals(Action.COOPERATE) && lastGame.other.equals(Action.DEFECT)) {
-			return new StrategySet(Action.DEFECT, false, false, false);
+		if (count == 0) {
+			return null;
 		}
-		if (lastGame.self.equals(Action.DEFECT) && lastGame.other.equals(Action.COOPERATE)) {
-			return new StrategySet(Action.DEFECT, false, false, false);
+		int pick = sim.random.nextInt(count);
+		for (int k = 0; ; k++) {
+			int o = occupancy.get(occupancy.stx(x - r + k / rows), occupancy.sty(y - r + k % rows));
+			if (k != center && o != OccupancyGrid.EMPTY && slots.get(o).playedStep != now && pick-- == 0) {
+				return slots.get(o);
+			}
 		}
-		if (lastGame.self.equals(Action.DEFECT) && lastGame.other.equals(Action.DEFECT)) {
-			return new StrategySet(Action.COOPERATE, false, false, false);
-		}		// else there must be a NOTHING in one of the spots, which implies ... 
-		return new StrategySet(Action.COOPERATE, false, false, false);
 	}
 	
 	/**
-	 * Return strategy set for realistic tit-for-tat (also known as walkaway tit-for-tat).
-	 * @return strategy set
+	 * Play the dictator game with a partner, returning true if the agent should move due to strategy or because no partner was found. The partner agent will automatically be played and moved and its played flag will
+	 * be set so it can not be played again in this step. If null is passed, this will be interpreted as indicating no partners were available, and the appropriate value for movement based on the agent's strategy will
+	 * be returned.
+	 * @param partner agent to play with or null if none are available
+	 * @return true if this agent should move
 	 */
-	private StrategySet playRealisticTFT() {
-		if (lastGame.other.equals(Action.DEFECT)) {						// we can just test for DEFECT ...
-			return new StrategySet(Action.DEFECT, false, true, true);
+	private boolean playAndDecideMove(Agent partner) {
+		if (partner == null) {
+			lastSelf = lastOther = StrategyTable.NOTHING;	// nothing happens if there are no partners; the history only records games played, so it is kept
+			return StrategyTable.movesWithoutPartner(strategy.ordinal());
 		}
-		return new StrategySet(Action.COOPERATE, false, true, true);	// ... because this is the return value for both COOPERATE and NOTHING
-	}
-	
-	/**
-	 * Return strategy set for mobile tit-for-tat.
-	 * @return strategy set
-	 */
-	private StrategySet playTFTMobile() {
-		if (lastGame.other.equals(Action.COOPERATE)) {
-			return new StrategySet(Action.COOPERATE, false, false, true);
+		long t = times.on ? System.nanoTime() : 0;
+		int myResponse = selectAction(partner);
+		int partnerResponse = partner.selectAction(this);
+		if (times.on) {
+			times.add(PhaseTimes.STRATEGY, t);
+			t = System.nanoTime();
 		}
-		if (lastGame.other.equals(Action.DEFECT)) {
-			return new StrategySet(Action.DEFECT, false, false, true);
-		}	// then it must be NOTHING
-		return new StrategySet(Action.COOPERATE, false, false, true);
-	}
-	
-	/**
-	 * Return strategy set for stationary tit-for-tat.
-	 * @return strategy set
-	 */
-	private StrategySet playTFTStationary() {
-		if (lastGame.other.equals(Action.COOPERATE)) {
-			return new StrategySet(Action.COOPERATE, false, false, false);
+		int sAct = StrategyTable.action(myResponse);
+		int pAct = StrategyTable.action(partnerResponse);
+		playPD(partner, sAct, pAct);
+		if (times.on) {
+			times.add(PhaseTimes.PAYOFF, t);
 		}
-		if (lastGame.other.equals(Action.DEFECT)) {
-			return new StrategySet(Action.DEFECT, false, false, false);
-		}	// this it must be NOTHING
-		return new StrategySet(Action.COOPERATE, false, false, false);
-	}
-	
-	/**
-	 * Return strategy set for walk-away cooperator.
-	 * @return strategy set
-	 */
-	private StrategySet playWalkawayC() {
-		return new StrategySet(Action.COOPERATE, false, true, true);
+		// the partner will need to move now if they are going to move at all, since they are now marked played (and might have already taken their step anyway)
+		if (StrategyTable.moves(partnerResponse, sAct)) {
+			partner.moveLogic();
+		}
+		// now we return our own decision
+		return StrategyTable.moves(myResponse, pAct);
 	}
 	
 	/**
-	 * Return strategy set for walk-away defector.
-	 * @return strategy set
+	 * Returns this agent's packed response (including game action and movement options given partner's action) based on this agent's strategy and history. See {@link StrategyTable}.
+	 * @param partner the partner this agent will be playing with
+	 * @return packed response for this move
 	 */
-	private StrategySet playWalkawayD() {
-		return new StrategySet(Action.DEFECT, false, true, true);
-	}
-	
-	// RETREAT Strategy
-	private StrategySet playRetreat() {
-		if(defected == false) {
-			if (lastGame.other.equals(Action.COOPERATE)) {
-				return new StrategySet(Action.COOPERATE, false, true, true);
-			}
-			if (lastGame.other.equals(Action.DEFECT)) {
-				defected = true;
-				return new StrategySet(Action.DEFECT, false, true, true);
-			}
-			return new StrategySet(Action.COOPERATE, false, true, true);
+	private int selectAction(Agent partner) {	// perhaps partner will be useful for future strategies
+		int response = StrategyTable.response(strategy.ordinal(), defected, lastSelf, lastOther, history);
+		if (StrategyTable.setsDefected(response)) {		// RETREAT remembers being defected against
+			defected = true;
 		}
-		return new StrategySet(Action.DEFECT, true, true, true);
+		return response;
 	}
 	
 	/**
 	 * Play the prisoner's dilemma game with the given partner using the strategies provided. Updates resources for both agents, sets played flag, and stores memory of last game play. This also introduces the specified
-	 * error rate in both players' actions.
+	 * error rate in both players' actions. Not part of the API; package-private so AgentBenchmark can time one game without a partner search.
 	 * @param partner agent to play with
-	 * @param myAction this agent's action
-	 * @param partnerAction partner's action
+	 * @param myAction this agent's action ordinal
+	 * @param partnerAction partner's action ordinal
 	 */
-	private void playPD(Agent partner, Action myAction, Action partnerAction) {
+	void playPD(Agent partner, int myAction, int partnerAction) {
 		myAction = introduceError(myAction);
 		partnerAction = introduceError(partnerAction);
-		if (myAction.equals(Action.COOPERATE) && partnerAction.equals(Action.COOPERATE)) {
-			resources += 3;
-			partner.resources += 3;
-		} else if (myAction.equals(Action.COOPERATE) && partnerAction.equals(Action.DEFECT)) {
-			resources -= 1;
-			partner.resources += 5;
-		} else if (myAction.equals(Action.DEFECT) && partnerAction.equals(Action.COOPERATE)) {
-			resources += 5;
-			partner.resources -= 1;
+		if (myAction == StrategyTable.COOPERATE && partnerAction == StrategyTable.COOPERATE) {
+			addResources(3);
+			partner.addResources(3);
+		} else if (myAction == StrategyTable.COOPERATE && partnerAction == StrategyTable.DEFECT) {
+			addResources(-1);
+			partner.addResources(5);
+		} else if (myAction == StrategyTable.DEFECT && partnerAction == StrategyTable.COOPERATE) {
+			addResources(5);
+			partner.addResources(-1);
 		}		// must be DEFECT/DEFECT, which means no change
-		played = true;
-		partner.played = true;
-		lastGame = new GameMemory(myAction, partnerAction);
-		partner.lastGame = new GameMemory(partnerAction, myAction);
+		playedStep = partner.playedStep = sim.schedule.getSteps();
+		lastSelf = myAction;
+		lastOther = partnerAction;
+		partner.lastSelf = partnerAction;
+		partner.lastOther = myAction;
+		history = StrategyTable.remember(strategy.ordinal(), history, myAction, partnerAction);
+		partner.history = StrategyTable.remember(partner.strategy.ordinal(), partner.history, partnerAction, myAction);
 		return;
 	}
 	
 	/**
 	 * Return the same action, usually, but flips it at the simulation's specified error rate. The action NOTHING is always unchanged.
-	 * @param a specified action
-	 * @return given action with simulated error in execution
+	 * @param a specified action ordinal
+	 * @return given action ordinal with simulated error in execution
 	 */
-	private Action introduceError(Action a) {
+	private int introduceError(int a) {
 		if (sim.random.nextBoolean(sim.getErrorRate())) {
-			if (a.equals(Action.COOPERATE)) {		// we only flip C and D -- NOTHING gets left alone
-				a = Action.DEFECT;
+			if (a == StrategyTable.COOPERATE) {		// we only flip C and D -- NOTHING gets left alone
+				a = StrategyTable.DEFECT;
 			}
-			if (a.equals(Action.DEFECT)) {
-				a = Action.COOPERATE;
+			if (a == StrategyTable.DEFECT) {
+				a = StrategyTable.COOPERATE;
 			}
 		}
 		return a;
@@ -374,11 +395,15 @@ public class Agent implements Steppable {
 	 * Based on the current resources, implements reproduction and death.
 	 */
 	private void updateLifeEvents() {
+		long t = times.on ? System.nanoTime() : 0;
 		if (resources <= 0) {
 			remove();
 		} else if (resources >= 100) {
 			reproduce();
 		}
+		if (times.on) {
+			times.add(PhaseTimes.LIFE, t);
+		}
 		return;
 	}
 	
@@ -386,6 +411,7 @@ public class Agent implements Steppable {
 	 * Reproduce a new agent if there is space in the simulation (that is, the population capacity has not been reached). Resources are divided evenly between the parent and the offspring.
 	 */
 	private void reproduce() {
+		double parentResources = resources;
 		if (space.allObjects.numObjs >= sim.acquirePopulationCap()) {		// if we're at the population cap, we'll have to wait to reproduce
 			if(sim.isEnforceCapAfterReproduction()) {
 				Agent o;
@@ -416,44 +442,103 @@ public class Agent implements Steppable {
 		if(o == null)
 			return;
 		
-		double split = resources / 2;
-		o.resources = resources - split;
-		resources = split;
+		double split = parentResources / 2;
+		o.setResources(parentResources - split);
+		if (o != this && alive) {		// we may have been the random removal, and even been reused for the offspring
+			setResources(split);
+		}
+		return;
+	}
+	
+	/**
+	 * Change this agent's resources, keeping the population registry up to date.
+	 * @param delta change in resources
+	 */
+	private void addResources(double delta) {
+		resources += delta;
+		population.changeResources(strategy.ordinal(), delta);
+		return;
+	}
+	
+	/**
+	 * Set this agent's resources, keeping the population registry up to date.
+	 * @param r new resources
+	 */
+	private void setResources(double r) {
+		population.changeResources(strategy.ordinal(), r - resources);
+		resources = r;
 		return;
 	}
 	
 	/**
-	 * Remove this agent from the simulation; simulated death.
+	 * Remove this agent from the simulation; simulated death. The object goes back to the scheduler's pool to be reused for a later birth. Not part of the API: package-private so PlacementBenchmark can free a cell
+	 * between placements; otherwise agents die only in {@link #step(SimState)}.
 	 */
-	private void remove() {
+	void remove() {
+		alive = false;
+		population.died(strategy.ordinal(), resources);
 		space.remove(this);
-		stopper.stop();
+		if (occupancy != null) {
+			occupancy.clear(x, y);
+			slots.remove(slot);
+		}
+		if (clusters != null) {
+			clusters.touched(x, y);
+		}
+		scheduler.remove(this);
 		return;
 	}
 	
 	/**
-	 * Attach the stopper that allows this agent to be removed from the schedule.
-	 * @param stopper stoppable object returned by schedule when adding a repeating object
+	 * Write the part of this agent's state that its location and strategy do not give: direction, game memory, the RETREAT defected flag, resources and ID. Whether it has played in the current step is
+	 * not written, so this must be called between steps.
+	 * @param out buffer to write to
 	 */
-	public void attachStopper(Stoppable stopper) {
-		this.stopper = stopper;
+	void writeState(ByteBuffer out) {
+		out.put((byte)dirx);
+		out.put((byte)diry);
+		out.put((byte)lastSelf);
+		out.put((byte)lastOther);
+		out.put((byte)(defected ? 1 : 0));
+		out.putShort((short)history);
+		out.putDouble(resources);
+		out.putInt(id);
 		return;
 	}
 	
 	/**
-	 * Reset this agent's played flag so it can play on the next time step; called by observer at the end of every step.
+	 * Read back the state written by {@link #writeState(ByteBuffer)}, replacing what {@link #init(int, int, Strategy)} gave this agent. The population registry is not updated.
+	 * @param in buffer to read from
 	 */
-	public void reset() {
-		played = false;
+	void readState(ByteBuffer in) {
+		dirx = in.get();
+		diry = in.get();
+		lastSelf = in.get();
+		lastOther = in.get();
+		defected = in.get() != 0;
+		history = in.getShort();
+		resources = in.getDouble();
+		id = in.getInt();
 		return;
 	}
-
+	
+	/**
+	 * Record this agent in the dense occupancy index at its current location, if the index is in use.
+	 */
+	public void attachOccupancy() {
+		if (occupancy != null) {
+			slot = slots.add(this);
+			occupancy.set(x, y, slot);
+		}
+		return;
+	}
+	
 	/**
 	 * Has this agent played (or played with another agent) in the current time step?
 	 * @return true if agent has played this time step
 	 */
 	public boolean isPlayed() {
-		return played;
+		return playedStep == sim.schedule.getSteps();
 	}
 
 	/**
@@ -512,12 +597,24 @@ public class Agent implements Steppable {
 		return strategy;
 	}
 	
+	/**
+	 * Get this agent's memory of its last game. The memory is stored as primitive fields, so this creates a new object on each call; it is meant for inspection, not for use during play.
+	 * @return memory of the last game
+	 */
 	public GameMemory getMemory() {
-		return lastGame;
+		return new GameMemory(StrategyTable.toAction(lastSelf), StrategyTable.toAction(lastOther));
+	}
+	
+	/**
+	 * Get this agent's history of its last games, as kept for memory-n strategies.
+	 * @return history register; see {@link StrategyTable}
+	 */
+	public int getHistory() {
+		return history;
 	}
 	
 	public String toString() {
-		return "PDWA Agent at (" + x + ", " + y + "): ID=" + id + "; strategy=" + strategy + "; resources=" + resources + "; played=" + played + "; dirx=" + dirx + "; diry=" + diry + ".";
+		return "PDWA Agent at (" + x + ", " + y + "): ID=" + id + "; strategy=" + strategy + "; resources=" + resources + "; played=" + isPlayed() + "; dirx=" + dirx + "; diry=" + diry + ".";
 	}
 	
 	public enum Action {
@@ -526,24 +623,6 @@ public class Agent implements Steppable {
 		NOTHING
 	}
 	
-	/**
-	 * Complete description of an agent's strategy at a given time step. Includes the action (cooperate or defect), and whether or not the agent will move based on its partners actions in the current game.
-	 * @author Matt L. Miller
-	 */
-	public class StrategySet {
-		Action action;
-		boolean moveCooperate;
-		boolean moveDefect;
-		boolean moveNothing;
-		
-		public StrategySet(Action action, boolean moveCooperate, boolean moveDefect, boolean moveNothing) {
-			this.action = action;
-			this.moveCooperate = moveCooperate;
-			this.moveDefect = moveDefect;
-			this.moveNothing = moveNothing;
-		}
-	}
-	
 	/**
 	 * A memory package of a single game play. Includes the agent's own action and its partner's action.
 	 * @author Matt L. Miller
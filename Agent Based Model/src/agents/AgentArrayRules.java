@@ -0,0 +1,401 @@
+package agents;
+
+import ec.util.MersenneTwisterFast;
+import simulation.PDWASim;
+import simulation.PartnerSelection;
+
+/**
+ * The rules of the game applied to agents in an {@link AgentStore}: the same rules as {@link Agent}, written against slots instead of objects. Each instance draws from the random number generator it is given,
+ * so independent regions of the grid can be played concurrently with their own generators. Likewise births, deaths and changes in resources are recorded in the registry it is given; rules that play concurrently
+ * must each be given their own registry, which then only ever holds resource changes, and their own {@link PhaseTimes}.
+ * <p>
+ * Without an occupancy grid, as in the well-mixed engine, agents have no location or direction: their partners are given to {@link #play(int, int)}, nobody moves, and offspring are added if the store has
+ * room.
+ */
+class AgentArrayRules {
+
+	private final PDWASim sim;
+	private final AgentStore store;
+	private final OccupancyGrid grid;
+	private final MersenneTwisterFast random;
+	private final PopulationRegistry population;
+	private final PhaseTimes times;
+	private final ClusterTracker clusters;		// null unless clusters are tracked
+	private final EmptyCellSearch nearby = new EmptyCellSearch();
+
+	AgentArrayRules(PDWASim sim, MersenneTwisterFast random, PopulationRegistry population, PhaseTimes times) {
+		this.sim = sim;
+		this.random = random;
+		this.population = population;
+		this.times = times;
+		store = sim.acquireAgentStore();
+		grid = sim.acquireOccupancy();
+		clusters = sim.acquireClusterTracker();
+	}
+
+	/**
+	 * Take this agent's turn up to, but not including, life events: pick a partner, play, and move as the strategies dictate.
+	 * @param a agent's slot
+	 */
+	void play(int a) {
+		long t = times.on ? System.nanoTime() : 0;
+		int partner = sim.getPartnerSelection() == PartnerSelection.SAMPLED ? samplePartner(a) : pickPartner(a);
+		if (times.on) {
+			times.add(PhaseTimes.PARTNER, t);
+		}
+		if (playAndDecideMove(a, partner)) {
+			moveLogic(a);
+		}
+		return;
+	}
+
+	/**
+	 * Take this agent's turn with a partner that has already been chosen, up to, but not including, life events.
+	 * @param a agent's slot
+	 * @param p partner's slot, or -1 if there is no partner this step
+	 */
+	void play(int a, int p) {
+		if (playAndDecideMove(a, p)) {
+			moveLogic(a);
+		}
+		return;
+	}
+
+	/**
+	 * Pick a random neighbor to play with, exactly as {@link Agent} does: starting from a random position in the neighborhood (in the order MASON lists Moore neighbors), take the first unplayed agent other than
+	 * this one, wrapping around to the start if necessary.
+	 * @param a slot of the agent looking for a partner
+	 * @return slot of the partner, or -1 if there are no available agents
+	 */
+	private int pickPartner(int a) {
+		int r = sim.getPlayRadius();
+		int cx = store.x[a];
+		int cy = store.y[a];
+		int rand = random.nextInt(grid.countMoore(cx, cy, r));		// count includes this agent, so is never 0
+		int wrapped = -1;								// first candidate before the random start, in case there are none after it
+		int columns = grid.spanX(r);
+		int rows = grid.spanY(r);
+		int k = 0;
+		for (int i = 0; i < columns; i++) {
+			int x = grid.stx(cx - r + i);
+			for (int j = 0; j < rows; j++) {
+				int o = grid.get(x, grid.sty(cy - r + j));
+				if (o == OccupancyGrid.EMPTY) {
+					continue;
+				}
+				if (o != a && store.playedEpoch[o] != store.epoch) {
+					if (k >= rand) {
+						return o;
+					}
+					if (wrapped < 0) {
+						wrapped = o;
+					}
+				}
+				k++;
+			}
+		}
+		return wrapped;
+	}
+
+	/**
+	 * Pick a random neighbor to play with, uniformly from among the unplayed agents within the play radius, exactly as {@link Agent} does: probe random cells, then fall back to counting the candidates. See
+	 * {@link PartnerSelection#SAMPLED}.
+	 * @param a slot of the agent looking for a partner
+	 * @return slot of the partner, or -1 if there are no available agents
+	 */
+	private int samplePartner(int a) {
+		int r = sim.getPlayRadius();
+		int rows = grid.spanY(r);
+		int cells = grid.spanX(r) * rows;
+		if (cells == 1) {
+			return -1;
+		}
+		int center = r % grid.spanX(r) * rows + r % rows;
+		int cx = store.x[a];
+		int cy = store.y[a];
+		for (int i = 0; i < PartnerSelection.MAX_PROBES; i++) {
+			int k = random.nextInt(cells - 1);		// any cell but our own
+			if (k >= center) {
+				k++;
+			}
+			int o = grid.get(grid.stx(cx - r + k / rows), grid.sty(cy - r + k % rows));
+			if (o != OccupancyGrid.EMPTY && store.playedEpoch[o] != store.epoch) {
+				return o;
+			}
+		}
+		int count = 0;
+		for (int k = 0; k < cells; k++) {
+			int o = grid.get(grid.stx(cx - r + k / rows), grid.sty(cy - r + k % rows));
+			if (k != center && o != OccupancyGrid.EMPTY && store.playedEpoch[o] != store.epoch) {
+				count++;
+			}
+		}
+		if (count == 0) {
+			return -1;
+		}
+		int pick = random.nextInt(count);
+		for (int k = 0; ; k++) {
+			int o = grid.get(grid.stx(cx - r + k / rows), grid.sty(cy - r + k % rows));
+			if (k != center && o != OccupancyGrid.EMPTY && store.playedEpoch[o] != store.epoch && pick-- == 0) {
+				return o;
+			}
+		}
+	}
+
+	/**
+	 * Play the game with a partner and decide whether to move; see {@link Agent}.
+	 * @param a agent's slot
+	 * @param p partner's slot, or -1 if none are available
+	 * @return true if this agent should move
+	 */
+	private boolean playAndDecideMove(int a, int p) {
+		if (p < 0) {
+			store.lastSelf[a] = store.lastOther[a] = (byte)StrategyTable.NOTHING;		// the history is kept, as it only records games played
+			return StrategyTable.movesWithoutPartner(store.strategy[a]);
+		}
+		long t = times.on ? System.nanoTime() : 0;
+		int myResponse = selectAction(a);
+		int partnerResponse = selectAction(p);
+		if (times.on) {
+			times.add(PhaseTimes.STRATEGY, t);
+			t = System.nanoTime();
+		}
+		int sAct = StrategyTable.action(myResponse);
+		int pAct = StrategyTable.action(partnerResponse);
+		playPD(a, p, sAct, pAct);
+		if (times.on) {
+			times.add(PhaseTimes.PAYOFF, t);
+		}
+		if (StrategyTable.moves(partnerResponse, sAct)) {
+			moveLogic(p);
+		}
+		return StrategyTable.moves(myResponse, pAct);
+	}
+
+	private int selectAction(int a) {
+		int response = StrategyTable.response(store.strategy[a], store.defected[a], store.lastSelf[a], store.lastOther[a], store.history[a]);
+		if (StrategyTable.setsDefected(response)) {
+			store.defected[a] = true;
+		}
+		return response;
+	}
+
+	private void playPD(int a, int p, int myAction, int partnerAction) {
+		myAction = introduceError(myAction);
+		partnerAction = introduceError(partnerAction);
+		if (myAction == StrategyTable.COOPERATE && partnerAction == StrategyTable.COOPERATE) {
+			addResources(a, 3);
+			addResources(p, 3);
+		} else if (myAction == StrategyTable.COOPERATE && partnerAction == StrategyTable.DEFECT) {
+			addResources(a, -1);
+			addResources(p, 5);
+		} else if (myAction == StrategyTable.DEFECT && partnerAction == StrategyTable.COOPERATE) {
+			addResources(a, 5);
+			addResources(p, -1);
+		}		// must be DEFECT/DEFECT, which means no change
+		store.playedEpoch[a] = store.playedEpoch[p] = store.epoch;
+		store.lastSelf[a] = (byte)myAction;
+		store.lastOther[a] = (byte)partnerAction;
+		store.lastSelf[p] = (byte)partnerAction;
+		store.lastOther[p] = (byte)myAction;
+		store.history[a] = (short)StrategyTable.remember(store.strategy[a], store.history[a], myAction, partnerAction);
+		store.history[p] = (short)StrategyTable.remember(store.strategy[p], store.history[p], partnerAction, myAction);
+		return;
+	}
+
+	private int introduceError(int a) {
+		if (random.nextBoolean(sim.getErrorRate())) {
+			if (a == StrategyTable.COOPERATE) {		// we only flip C and D -- NOTHING gets left alone
+				a = StrategyTable.DEFECT;
+			}
+			if (a == StrategyTable.DEFECT) {
+				a = StrategyTable.COOPERATE;
+			}
+		}
+		return a;
+	}
+
+	private void randomizeMovement(int a) {
+		store.dirx[a] = (byte)(random.nextInt(3) - 1);
+		store.diry[a] = (byte)(random.nextInt(3) - 1);
+		return;
+	}
+
+	private void moveLogic(int a) {
+		if (grid == null) {		// well mixed, so there is nowhere to move to
+			return;
+		}
+		long t = times.on ? System.nanoTime() : 0;
+		if (random.nextBoolean(sim.getProbRandomMove())) {
+			randomizeMovement(a);
+		}
+		move(a);
+		if (times.on) {
+			times.add(PhaseTimes.MOVE, t);
+		}
+		return;
+	}
+
+	private void move(int a) {
+		int x = store.x[a];
+		int y = store.y[a];
+		int tempx = grid.stx(x + store.dirx[a]);
+		int tempy = grid.sty(y + store.diry[a]);
+		if (!grid.isEmpty(tempx, tempy)) {		// also true when standing still, since we occupy our own cell
+			store.dirx[a] = (byte)-store.dirx[a];
+			store.diry[a] = (byte)-store.diry[a];
+			return;
+		}
+		grid.move(x, y, tempx, tempy);
+		store.x[a] = tempx;
+		store.y[a] = tempy;
+		if (clusters != null) {
+			clusters.touched(x, y);
+			clusters.touched(tempx, tempy);
+		}
+		return;
+	}
+
+	/**
+	 * Based on the current resources, implements reproduction and death.
+	 * @param a agent's slot
+	 */
+	void updateLifeEvents(int a) {
+		long t = times.on ? System.nanoTime() : 0;
+		if (store.resources[a] <= 0) {
+			remove(a);
+		} else if (store.resources[a] >= 100) {
+			reproduce(a);
+		}
+		if (times.on) {
+			times.add(PhaseTimes.LIFE, t);
+		}
+		return;
+	}
+
+	/**
+	 * Reproduce a new agent if there is space, exactly as {@link Agent} does. Note that when the cap is enforced after reproduction, that means one offspring is made, a random agent (possibly the parent) is removed,
+	 * and then a second offspring is made which takes half of the parent's resources.
+	 * @param a parent's slot
+	 */
+	private void reproduce(int a) {
+		double parentResources = store.resources[a];
+		Strategy s = store.getStrategy(a);
+		if (store.size() >= sim.acquirePopulationCap()) {		// if we're at the population cap, we'll have to wait to reproduce
+			if (!sim.isEnforceCapAfterReproduction()) {
+				return;
+			}
+			if (makeOffspring(a, s) < 0) {
+				return;
+			}
+			remove(store.slotAt(random.nextInt(store.size())));
+		}
+		int o = makeOffspring(a, s);
+		if (o < 0) {
+			return;
+		}
+		double split = parentResources / 2;
+		setResources(o, parentResources - split);
+		if (o != a && store.alive[a]) {		// the parent may have been the random removal, and its slot reused by the offspring
+			setResources(a, split);
+		}
+		return;
+	}
+
+	/**
+	 * Change an agent's resources, keeping the population registry up to date.
+	 * @param a agent's slot
+	 * @param delta change in resources
+	 */
+	private void addResources(int a, double delta) {
+		store.resources[a] += delta;
+		population.changeResources(store.strategy[a], delta);
+		return;
+	}
+
+	private void setResources(int a, double r) {
+		population.changeResources(store.strategy[a], r - store.resources[a]);
+		store.resources[a] = r;
+		return;
+	}
+
+	private int makeOffspring(int a, Strategy s) {
+		if (sim.isLocalReproduction() && grid != null) {
+			return makeAgentNear(store.x[a], store.y[a], sim.getReproductionRadius(), s);
+		}
+		return makeAgent(s);
+	}
+
+	/**
+	 * Remove an agent from the simulation; simulated death.
+	 * @param a agent's slot
+	 */
+	private void remove(int a) {
+		if (grid != null) {
+			grid.clear(store.x[a], store.y[a]);
+			if (clusters != null) {
+				clusters.touched(store.x[a], store.y[a]);
+			}
+		}
+		population.died(store.strategy[a], store.resources[a]);
+		store.remove(a);
+		return;
+	}
+
+	/**
+	 * Make a new agent with the given strategy at a random empty location, drawn from the grid's free-cell index if it has one or else by trying random cells, as {@link PDWASim#makeAgent(Strategy)} does.
+	 * Without a grid, the agent is added if the store has room.
+	 * @param strat game strategy
+	 * @return the new agent's slot, or -1 if the grid (or store) is full
+	 */
+	int makeAgent(Strategy strat) {
+		if (grid == null) {
+			return store.size() < store.capacity() ? place(0, 0, strat) : -1;		// the location is not kept
+		}
+		if (grid.isIndexingFreeCells()) {
+			int cell = grid.randomEmptyCell(random);
+			if (cell < 0) {
+				return -1;
+			}
+			return place(cell % grid.getWidth(), cell / grid.getWidth(), strat);
+		}
+		int x, y;
+		do {
+			x = random.nextInt(grid.getWidth());
+			y = random.nextInt(grid.getHeight());
+		} while (!grid.isEmpty(x, y));
+		return place(x, y, strat);
+	}
+
+	/**
+	 * Make a new agent with the given strategy at a random empty location within <i>radius</i> of (<i>x</i>, <i>y</i>).
+	 * @return the new agent's slot, or -1 if there are no empty locations nearby
+	 */
+	private int makeAgentNear(int x, int y, int radius, Strategy strat) {
+		int cell = nearby.nearby(grid, x, y, radius, random);
+		if (cell < 0) {
+			return -1;
+		}
+		return place(cell % grid.getWidth(), cell / grid.getWidth(), strat);
+	}
+
+	private int place(int x, int y, Strategy strat) {
+		int dirx = 0;
+		int diry = 0;
+		if (grid != null) {
+			dirx = random.nextInt(3) - 1;
+			diry = random.nextInt(3) - 1;
+		}
+		double resources = random.nextInt(40) + 10;		// uniformly distributed in [10, 49]
+		int slot = store.add(x, y, dirx, diry, resources, strat, sim.acquireNextAgentId());
+		if (grid != null) {
+			grid.set(x, y, slot);
+			if (clusters != null) {
+				clusters.touched(x, y);
+			}
+		}
+		population.born(store.strategy[slot], resources);
+		return slot;
+	}
+
+}
@@ -0,0 +1,75 @@
+package agents;
+
+import sim.engine.SimState;
+import sim.engine.Steppable;
+import sim.engine.Stoppable;
+import simulation.PDWASim;
+
+/**
+ * Steps every agent in an {@link AgentStore} as a single Steppable, applying the same rules as {@link Agent}. Agents are visited in a fresh random order every step, as the MASON schedule does for individually
+ * scheduled agents, and agents born during a step first act on the next one.
+ */
+public class AgentArrayStepper implements Steppable {
+
+	private final PDWASim sim;
+	private final AgentStore store;
+	private final AgentArrayRules rules;
+	private int[] order;
+	private Stoppable stopper;
+
+	public AgentArrayStepper(PDWASim sim) {
+		this.sim = sim;
+		store = sim.acquireAgentStore();
+		rules = new AgentArrayRules(sim, sim.random, sim.acquirePopulation(), sim.acquirePhaseTimes());
+		order = new int[store.capacity()];
+	}
+
+	@Override
+	public void step(SimState state) {
+		sim.acquirePhaseTimes().startStep();
+		store.nextEpoch();
+		int n = store.size();
+		for (int i = 0; i < n; i++) {
+			int slot = store.slotAt(i);
+			order[i] = slot;
+			store.fresh[slot] = false;
+		}
+		for (int i = n - 1; i > 0; i--) {		// same shuffle the schedule gives individually scheduled agents
+			int j = sim.random.nextInt(i + 1);
+			int t = order[i];
+			order[i] = order[j];
+			order[j] = t;
+		}
+		for (int i = 0; i < n; i++) {
+			int a = order[i];
+			if (!store.alive[a] || store.fresh[a] || store.isPlayed(a)) {		// dead, just born into a dead agent's slot, or already played as a partner
+				continue;
+			}
+			rules.play(a);
+			rules.updateLifeEvents(a);
+		}
+		if (store.size() == 0) {
+			stopper.stop();
+		}
+		return;
+	}
+
+	/**
+	 * Attach the stopper that allows this stepper to be removed from the schedule.
+	 * @param stopper stoppable object returned by schedule when adding a repeating object
+	 */
+	public void attachStopper(Stoppable stopper) {
+		this.stopper = stopper;
+		return;
+	}
+
+	/**
+	 * Make a new agent with the given strategy at a random empty location.
+	 * @param strat game strategy
+	 * @return the new agent's slot, or -1 if the grid is full
+	 */
+	public int makeAgent(Strategy strat) {
+		return rules.makeAgent(strat);
+	}
+
+}
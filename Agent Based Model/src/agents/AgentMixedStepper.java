@@ -0,0 +1,84 @@
+package agents;
+
+import sim.engine.SimState;
+import sim.engine.Steppable;
+import sim.engine.Stoppable;
+import simulation.PDWASim;
+
+/**
+ * Steps every agent in an {@link AgentStore} as a well-mixed population: there is no grid, so instead of looking for a neighbor each agent is paired with another at random. Every step the live agents are
+ * shuffled and paired off in that order, with the odd one out (if any) going without a partner, then the life events of the first agent of each pair and of the odd one out are applied in the same
+ * order. As in the spatial engines, where an agent played as a partner has had its turn, life events included, the second agent of a pair has none that step, so death and birth come at the same rate per turn
+ * taken and the engines differ only in who meets whom. The game, strategies, payoffs, errors, death,
+ * reproduction and population cap are those of {@link Agent}, applied by {@link AgentArrayRules}; only movement, which means nothing without space, is left out. Agents born during a step first play on the next
+ * one.
+ */
+public class AgentMixedStepper implements Steppable {
+
+	private final PDWASim sim;
+	private final AgentStore store;
+	private final AgentArrayRules rules;
+	private int[] order;
+	private Stoppable stopper;
+
+	public AgentMixedStepper(PDWASim sim) {
+		this.sim = sim;
+		store = sim.acquireAgentStore();
+		rules = new AgentArrayRules(sim, sim.random, sim.acquirePopulation(), sim.acquirePhaseTimes());
+		order = new int[store.capacity()];
+	}
+
+	@Override
+	public void step(SimState state) {
+		sim.acquirePhaseTimes().startStep();
+		store.nextEpoch();
+		int n = store.size();
+		for (int i = 0; i < n; i++) {
+			int slot = store.slotAt(i);
+			order[i] = slot;
+			store.fresh[slot] = false;
+		}
+		for (int i = n - 1; i > 0; i--) {
+			int j = sim.random.nextInt(i + 1);
+			int t = order[i];
+			order[i] = order[j];
+			order[j] = t;
+		}
+		for (int i = 0; i + 1 < n; i += 2) {
+			rules.play(order[i], order[i + 1]);
+		}
+		if (n % 2 == 1) {
+			rules.play(order[n - 1], -1);
+		}
+		for (int i = 0; i < n; i += 2) {		// the first of each pair, and the odd one out, took the turn
+			int a = order[i];
+			if (!store.alive[a] || store.fresh[a]) {		// dead, or just born into a dead agent's slot
+				continue;
+			}
+			rules.updateLifeEvents(a);
+		}
+		if (store.size() == 0) {
+			stopper.stop();
+		}
+		return;
+	}
+
+	/**
+	 * Attach the stopper that allows this stepper to be removed from the schedule.
+	 * @param stopper stoppable object returned by schedule when adding a repeating object
+	 */
+	public void attachStopper(Stoppable stopper) {
+		this.stopper = stopper;
+		return;
+	}
+
+	/**
+	 * Make a new agent with the given strategy.
+	 * @param strat game strategy
+	 * @return the new agent's slot, or -1 if the population is as large as the store allows
+	 */
+	public int makeAgent(Strategy strat) {
+		return rules.makeAgent(strat);
+	}
+
+}
@@ -0,0 +1,143 @@
+package agents;
+
+import java.util.Arrays;
+
+import sim.engine.SimState;
+import sim.engine.Steppable;
+import sim.engine.Stoppable;
+import simulation.PDWASim;
+
+/**
+ * Steps every {@link Agent} as a single Steppable, instead of giving each agent its own repeating entry on the MASON schedule. Agents are visited in a fresh random order every step, shuffled from the order in
+ * which they were scheduled just as the schedule shuffles individually scheduled agents; agents that die during a step are not stepped, and agents born during a step first act on the next one.
+ * <p>
+ * Dead agents are kept in a pool and reinitialized in place for later births, so steady birth and death churn allocates neither agents nor schedule entries.
+ * <p>
+ * With activity tracking, every agent is still visited every step, but isolated stationary agents are asleep and their turns cost only the random draws they must make; see {@link ActivityGrid}.
+ */
+public class AgentScheduler implements Steppable {
+
+	private final PDWASim sim;
+	private Agent[] agents = new Agent[1024];	// in the order they were scheduled; null where an agent has died since the last step
+	private int n;
+	private int live;
+	private Agent[] order = new Agent[1024];
+	private Agent[] pool = new Agent[64];		// dead agents waiting to be reused
+	private int nPool;
+	private int epoch;		// advanced once per step, to tell agents born during the step from those scheduled before it
+	private Stoppable stopper;
+
+	public AgentScheduler(PDWASim sim) {
+		this.sim = sim;
+	}
+
+	@Override
+	public void step(SimState state) {
+		sim.acquirePhaseTimes().startStep();
+		epoch++;
+		int m = 0;
+		for (int i = 0; i < n; i++) {		// drop dead agents, keeping the rest in order
+			Agent a = agents[i];
+			if (a != null) {
+				a.schedulePos = m;
+				agents[m++] = a;
+			}
+		}
+		Arrays.fill(agents, m, n, null);
+		n = m;
+		if (order.length < n) {
+			order = new Agent[agents.length];
+		}
+		System.arraycopy(agents, 0, order, 0, n);
+		for (int i = n - 1; i > 0; i--) {		// same shuffle the schedule gives individually scheduled agents
+			int j = sim.random.nextInt(i + 1);
+			Agent t = order[i];
+			order[i] = order[j];
+			order[j] = t;
+		}
+		for (int i = 0; i < m; i++) {
+			Agent a = order[i];
+			if (a.schedulePos >= 0 && a.scheduledEpoch != epoch) {		// not dead, nor dead and reused for a birth during this step
+				a.step(state);
+			}
+		}
+		if (live == 0) {
+			stopper.stop();
+		}
+		return;
+	}
+
+	/**
+	 * Make a new agent and schedule it, reusing a dead agent if there is one.
+	 * @param x x-coordinate
+	 * @param y y-coordinate
+	 * @param strategy game strategy
+	 * @return the new agent
+	 */
+	public Agent makeAgent(int x, int y, Strategy strategy) {
+		Agent a;
+		if (nPool > 0) {
+			a = pool[--nPool];
+			pool[nPool] = null;
+			a.init(x, y, strategy);
+		} else {
+			a = new Agent(sim, x, y, strategy);
+		}
+		if (n == agents.length) {
+			agents = Arrays.copyOf(agents, n * 2);
+		}
+		a.schedulePos = n;
+		a.scheduledEpoch = epoch;
+		agents[n++] = a;
+		live++;
+		ActivityGrid activity = sim.acquireActivity();
+		if (activity != null) {
+			activity.arrived(x, y, sim.schedule.getSteps());
+		}
+		ClusterTracker clusters = sim.acquireClusterTracker();
+		if (clusters != null) {
+			clusters.touched(x, y);
+		}
+		return a;
+	}
+
+	/**
+	 * Unschedule a dead agent and keep it for reuse.
+	 * @param a the agent
+	 */
+	void remove(Agent a) {
+		agents[a.schedulePos] = null;
+		a.schedulePos = -1;
+		live--;
+		if (nPool == pool.length) {
+			pool = Arrays.copyOf(pool, nPool * 2);
+		}
+		pool[nPool++] = a;
+		return;
+	}
+
+	/**
+	 * Get the live agents in the order they were scheduled, which is the order the next step shuffles.
+	 * @return new array of the agents
+	 */
+	Agent[] scheduled() {
+		Agent[] in = new Agent[live];
+		int m = 0;
+		for (int i = 0; i < n; i++) {
+			if (agents[i] != null) {
+				in[m++] = agents[i];
+			}
+		}
+		return in;
+	}
+
+	/**
+	 * Attach the stopper that allows this scheduler to be removed from the schedule.
+	 * @param stopper stoppable object returned by schedule when adding a repeating object
+	 */
+	public void attachStopper(Stoppable stopper) {
+		this.stopper = stopper;
+		return;
+	}
+
+}
@@ -0,0 +1,54 @@
+package agents;
+
+import java.util.Arrays;
+
+/**
+ * Maps the small integer slots stored in an {@link OccupancyGrid} back to {@link Agent} objects. Slots of removed agents are reused, so the table stays as large as the biggest population seen.
+ */
+public class AgentSlots {
+
+	private Agent[] agents = new Agent[1024];
+	private int[] free = new int[1024];
+	private int nFree;
+	private int used;		// slots handed out at least once
+
+	/**
+	 * Give an agent a slot.
+	 * @param a the agent
+	 * @return its slot
+	 */
+	int add(Agent a) {
+		int slot;
+		if (nFree > 0) {
+			slot = free[--nFree];
+		} else {
+			if (used == agents.length) {
+				agents = Arrays.copyOf(agents, used * 2);
+				free = Arrays.copyOf(free, used * 2);
+			}
+			slot = used++;
+		}
+		agents[slot] = a;
+		return slot;
+	}
+
+	/**
+	 * Free an agent's slot.
+	 * @param slot the slot
+	 */
+	void remove(int slot) {
+		agents[slot] = null;
+		free[nFree++] = slot;
+		return;
+	}
+
+	/**
+	 * Get the agent in a slot.
+	 * @param slot the slot
+	 * @return the agent, or null if the slot is free
+	 */
+	public Agent get(int slot) {
+		return agents[slot];
+	}
+
+}
@@ -0,0 +1,183 @@
+package agents;
+
+/**
+ * Structure-of-arrays storage for agent state, used by the array engine in place of one {@link Agent} object per individual. Each agent lives in a slot, and its state is spread across primitive arrays indexed by
+ * that slot. Slots of dead agents are reused for new ones. The live slots are also kept densely packed so they can be iterated, or one picked at random, without scanning the whole capacity.
+ */
+public class AgentStore {
+
+	final int[] x;		// location and direction are null in a store without locations
+	final int[] y;
+	final byte[] dirx;
+	final byte[] diry;
+	final double[] resources;
+	final byte[] strategy;
+	final byte[] lastSelf;
+	final byte[] lastOther;
+	final short[] history;		// history register of the last games, for memory-n strategies; see StrategyTable
+	final int[] playedEpoch;	// epoch in which the agent last played; it has played this step if this equals the current epoch
+	final boolean[] defected;
+	final boolean[] alive;
+	final boolean[] fresh;		// born during the current step, so not stepped until the next one
+	final int[] id;
+
+	private final int[] live;		// live slots, densely packed
+	private final int[] livePos;	// position of each slot within live
+	private int size;
+	private final int[] free;		// stack of unused slots
+	private int nFree;
+	int epoch;		// advanced once per step, so played flags never need clearing
+
+	/**
+	 * Make an empty store.
+	 * @param capacity largest number of agents alive at once
+	 * @param located true to keep each agent's location and direction, false for agents that have none, as in the well-mixed engine
+	 */
+	public AgentStore(int capacity, boolean located) {
+		x = located ? new int[capacity] : null;
+		y = located ? new int[capacity] : null;
+		dirx = located ? new byte[capacity] : null;
+		diry = located ? new byte[capacity] : null;
+		resources = new double[capacity];
+		strategy = new byte[capacity];
+		lastSelf = new byte[capacity];
+		lastOther = new byte[capacity];
+		history = new short[capacity];
+		playedEpoch = new int[capacity];
+		defected = new boolean[capacity];
+		alive = new boolean[capacity];
+		fresh = new boolean[capacity];
+		id = new int[capacity];
+		live = new int[capacity];
+		livePos = new int[capacity];
+		free = new int[capacity];
+		for (int i = 0; i < capacity; i++) {
+			free[i] = capacity - 1 - i;		// hand out low slots first
+		}
+		nFree = capacity;
+	}
+
+	/**
+	 * Add a new agent with an empty game memory. The location and direction are ignored by a store without locations.
+	 * @return the new agent's slot
+	 */
+	int add(int x, int y, int dirx, int diry, double resources, Strategy strategy, int id) {
+		if (nFree == 0) {
+			throw new RuntimeException("Agent store is full at " + live.length + " agents");
+		}
+		int slot = free[--nFree];
+		if (this.x != null) {
+			this.x[slot] = x;
+			this.y[slot] = y;
+			this.dirx[slot] = (byte)dirx;
+			this.diry[slot] = (byte)diry;
+		}
+		this.resources[slot] = resources;
+		this.strategy[slot] = (byte)strategy.ordinal();
+		lastSelf[slot] = (byte)StrategyTable.NOTHING;
+		lastOther[slot] = (byte)StrategyTable.NOTHING;
+		history[slot] = StrategyTable.EMPTY_HISTORY;
+		playedEpoch[slot] = epoch - 1;
+		defected[slot] = false;
+		alive[slot] = true;
+		fresh[slot] = true;
+		this.id[slot] = id;
+		live[size] = slot;
+		livePos[slot] = size;
+		size++;
+		return slot;
+	}
+
+	/**
+	 * Remove an agent, freeing its slot.
+	 * @param slot the agent's slot
+	 */
+	void remove(int slot) {
+		alive[slot] = false;
+		int pos = livePos[slot];
+		int last = live[--size];
+		live[pos] = last;
+		livePos[last] = pos;
+		free[nFree++] = slot;
+		return;
+	}
+
+	/**
+	 * Number of live agents.
+	 * @return population size
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Get the slot of the i-th live agent. The order changes as agents are added and removed.
+	 * @param i index in [0, size)
+	 * @return slot
+	 */
+	public int slotAt(int i) {
+		return live[i];
+	}
+
+	public int capacity() {
+		return live.length;
+	}
+
+	/**
+	 * Does this store keep the agents' locations and directions?
+	 * @return false for the well-mixed engine
+	 */
+	public boolean isLocated() {
+		return x != null;
+	}
+
+	public boolean isAlive(int slot) {
+		return alive[slot];
+	}
+
+	public int getX(int slot) {
+		return x[slot];
+	}
+
+	public int getY(int slot) {
+		return y[slot];
+	}
+
+	public double getResources(int slot) {
+		return resources[slot];
+	}
+
+	public Strategy getStrategy(int slot) {
+		return Strategy.forOrdinal(strategy[slot]);
+	}
+
+	public int getStrategyOrdinal(int slot) {
+		return strategy[slot];
+	}
+
+	public int getHistory(int slot) {
+		return history[slot];
+	}
+
+	public int getId(int slot) {
+		return id[slot];
+	}
+
+	/**
+	 * Has this agent played (or been played with) in the current step, or the most recent one if no step is in progress?
+	 * @param slot the agent's slot
+	 * @return true if the agent has played
+	 */
+	public boolean isPlayed(int slot) {
+		return playedEpoch[slot] == epoch;
+	}
+
+	/**
+	 * Start a new step, in which no agent has played yet.
+	 */
+	void nextEpoch() {
+		epoch++;
+		return;
+	}
+
+}
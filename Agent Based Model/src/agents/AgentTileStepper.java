@@ -0,0 +1,318 @@
+package agents;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+import ec.util.MersenneTwisterFast;
+import sim.engine.SimState;
+import sim.engine.Steppable;
+import sim.engine.Stoppable;
+import simulation.PDWASim;
+
+/**
+ * Steps the agents in an {@link AgentStore} on several threads by splitting the toroidal grid into tiles. Tiles are colored like a checkerboard in both directions, giving four phases; in each phase every tile
+ * of that color is played concurrently. An agent can only read or change cells within <i>playRadius</i> + 1 of itself (its partner, and the cells either of them moves into), so as long as every tile is at
+ * least 2 * (<i>playRadius</i> + 1) cells across, tiles of the same color never touch the same cells.
+ * <p>
+ * Results are reproducible for a given seed and tile count, whatever the number of threads:
+ * <ul>
+ * <li>each tile has its own random number generator, seeded from the simulation's generator when the stepper is made;</li>
+ * <li>in each phase, a tile plays the agents that are in it at the start of the phase and have not yet had a turn this step, in an order shuffled by the tile's generator;</li>
+ * <li>deaths and births are deferred to a serial pass at the end of the step, which handles the agents in tile order and then in the order they played, using the simulation's generator.</li>
+ * </ul>
+ * These last two points are where this differs from {@link AgentArrayStepper}: turns are ordered by phase rather than by one global shuffle, and an agent's death or offspring takes effect at the end of the
+ * step rather than immediately.
+ */
+public class AgentTileStepper implements Steppable {
+
+	private static final int PHASES = 4;
+
+	private final PDWASim sim;
+	private final AgentStore store;
+	private final OccupancyGrid grid;
+	private final int tiles;		// per side
+	private final int[] tileOfX;
+	private final int[] tileOfY;
+	private final int minTileSize;
+	private final AgentArrayRules serialRules;
+	private final PopulationRegistry[] tileResources;	// resource changes made by each tile's rules, merged into the simulation's registry after play
+	private final PhaseTimes times;
+	private final PhaseTimes[] tileTimes;				// likewise for phase timings
+	private final AgentArrayRules[] tileRules;
+	final MersenneTwisterFast[] tileRandom;		// saved with a Checkpoint
+	private final boolean[] stepped;
+	private final int[] bucket;		// this phase's agents, grouped by tile
+	private final int[] bucketStart;
+	private final int[] bucketFill;
+	private final int[][] events;	// agents that played in each tile, in order, for the life events pass
+	private final int[] nEvents;
+	private final List<List<Callable<Object>>> phaseTasks;
+	private final ExecutorService executor;
+	private Stoppable stopper;
+
+	/**
+	 * Make a stepper for the simulation's agent store.
+	 * @param sim the simulation
+	 * @param tiles number of tiles along each side of the grid; must be even
+	 * @param threads number of threads to play tiles on
+	 */
+	public AgentTileStepper(PDWASim sim, int tiles, int threads) {
+		this.sim = sim;
+		this.tiles = tiles;
+		store = sim.acquireAgentStore();
+		grid = sim.acquireOccupancy();
+		if (tiles < 2 || tiles % 2 != 0) {
+			throw new RuntimeException("The number of tiles per side must be even and at least 2: " + tiles);
+		}
+		tileOfX = tileMap(grid.getWidth(), tiles);
+		tileOfY = tileMap(grid.getHeight(), tiles);
+		minTileSize = Math.min(grid.getWidth() / tiles, grid.getHeight() / tiles);
+		checkTileSize();
+		times = sim.acquirePhaseTimes();
+		serialRules = new AgentArrayRules(sim, sim.random, sim.acquirePopulation(), times);
+		int n = tiles * tiles;
+		tileRules = new AgentArrayRules[n];
+		tileResources = new PopulationRegistry[n];
+		tileTimes = new PhaseTimes[n];
+		tileRandom = new MersenneTwisterFast[n];
+		events = new int[n][16];
+		nEvents = new int[n];
+		for (int t = 0; t < n; t++) {
+			tileRandom[t] = new MersenneTwisterFast(sim.random.nextLong());
+			tileResources[t] = new PopulationRegistry();
+			tileTimes[t] = new PhaseTimes();
+			tileRules[t] = new AgentArrayRules(sim, tileRandom[t], tileResources[t], tileTimes[t]);
+		}
+		stepped = new boolean[store.capacity()];
+		bucket = new int[store.capacity()];
+		bucketStart = new int[n + 1];
+		bucketFill = new int[n];
+		phaseTasks = new ArrayList<>();
+		for (int phase = 0; phase < PHASES; phase++) {
+			List<Callable<Object>> tasks = new ArrayList<>();
+			for (int t = 0; t < n; t++) {
+				if (phaseOf(t) == phase) {
+					final int tile = t;
+					tasks.add(() -> {
+						playTile(tile);
+						return null;
+					});
+				}
+			}
+			phaseTasks.add(tasks);
+		}
+		if (threads > 1) {
+			executor = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+				@Override
+				public Thread newThread(Runnable r) {
+					Thread t = new Thread(r, "PDWASim tile worker");
+					t.setDaemon(true);
+					return t;
+				}
+			});
+		} else {
+			executor = null;
+		}
+	}
+
+	@Override
+	public void step(SimState state) {
+		checkTileSize();
+		times.startStep();
+		for (PhaseTimes t : tileTimes) {
+			t.on = times.on;
+		}
+		store.nextEpoch();
+		int n = store.size();
+		for (int i = 0; i < n; i++) {
+			int slot = store.slotAt(i);
+			stepped[slot] = false;
+			store.fresh[slot] = false;
+		}
+		Arrays.fill(nEvents, 0);
+		for (int phase = 0; phase < PHASES; phase++) {
+			fillBuckets(phase);
+			runPhase(phase);
+		}
+		PopulationRegistry population = sim.acquirePopulation();
+		for (PopulationRegistry r : tileResources) {		// in tile order, so the sums do not depend on thread timing
+			population.mergeResources(r);
+		}
+		if (times.on) {
+			for (PhaseTimes t : tileTimes) {
+				times.merge(t);
+			}
+		}
+		for (int t = 0; t < nEvents.length; t++) {		// life events, serially and in a fixed order
+			int[] e = events[t];
+			for (int i = 0; i < nEvents[t]; i++) {
+				int a = e[i];
+				if (store.alive[a] && !store.fresh[a]) {		// may have been removed to make room for an earlier birth
+					serialRules.updateLifeEvents(a);
+				}
+			}
+		}
+		if (store.size() == 0) {
+			stopper.stop();
+		}
+		return;
+	}
+
+	/**
+	 * Attach the stopper that allows this stepper to be removed from the schedule.
+	 * @param stopper stoppable object returned by schedule when adding a repeating object
+	 */
+	public void attachStopper(Stoppable stopper) {
+		this.stopper = stopper;
+		return;
+	}
+
+	/**
+	 * Make a new agent with the given strategy at a random empty location.
+	 * @param strat game strategy
+	 * @return the new agent's slot, or -1 if the grid is full
+	 */
+	public int makeAgent(Strategy strat) {
+		return serialRules.makeAgent(strat);
+	}
+
+	/**
+	 * Stop the worker threads; called when the simulation finishes.
+	 */
+	public void shutdown() {
+		if (executor != null) {
+			executor.shutdownNow();
+		}
+		return;
+	}
+
+	/**
+	 * Group the agents that can still take a turn this step by tile, keeping only the tiles of the given phase. This is a counting sort over the live agents, so it is deterministic.
+	 * @param phase phase number
+	 */
+	private void fillBuckets(int phase) {
+		int n = store.size();
+		Arrays.fill(bucketStart, 0);
+		for (int i = 0; i < n; i++) {
+			int a = store.slotAt(i);
+			if (waiting(a)) {
+				int t = tileOf(a);
+				if (phaseOf(t) == phase) {
+					bucketStart[t + 1]++;
+				}
+			}
+		}
+		for (int t = 0; t < tiles * tiles; t++) {
+			bucketStart[t + 1] += bucketStart[t];
+		}
+		System.arraycopy(bucketStart, 0, bucketFill, 0, bucketFill.length);
+		for (int i = 0; i < n; i++) {
+			int a = store.slotAt(i);
+			if (waiting(a)) {
+				int t = tileOf(a);
+				if (phaseOf(t) == phase) {
+					bucket[bucketFill[t]++] = a;
+				}
+			}
+		}
+		return;
+	}
+
+	private void runPhase(int phase) {
+		List<Callable<Object>> tasks = phaseTasks.get(phase);
+		if (executor == null) {
+			for (int t = 0; t < tiles * tiles; t++) {
+				if (phaseOf(t) == phase) {
+					playTile(t);
+				}
+			}
+			return;
+		}
+		try {
+			for (Future<Object> f : executor.invokeAll(tasks)) {
+				f.get();
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new RuntimeException("Interrupted while stepping tiles", e);
+		} catch (ExecutionException e) {
+			throw new RuntimeException("Tile step failed", e.getCause());
+		}
+		return;
+	}
+
+	/**
+	 * Give every waiting agent in one tile its turn, in random order. Life events are only recorded here, for the serial pass.
+	 * @param t tile number
+	 */
+	private void playTile(int t) {
+		MersenneTwisterFast random = tileRandom[t];
+		AgentArrayRules rules = tileRules[t];
+		int from = bucketStart[t];
+		int to = bucketStart[t + 1];
+		for (int i = to - 1; i > from; i--) {
+			int j = from + random.nextInt(i - from + 1);
+			int tmp = bucket[i];
+			bucket[i] = bucket[j];
+			bucket[j] = tmp;
+		}
+		for (int i = from; i < to; i++) {
+			int a = bucket[i];
+			if (!waiting(a)) {		// played as a partner earlier in this tile
+				continue;
+			}
+			stepped[a] = true;
+			rules.play(a);
+			if (nEvents[t] == events[t].length) {
+				events[t] = Arrays.copyOf(events[t], nEvents[t] * 2);
+			}
+			events[t][nEvents[t]++] = a;
+		}
+		return;
+	}
+
+	/**
+	 * Can this agent still take a turn this step?
+	 */
+	private boolean waiting(int a) {
+		return store.alive[a] && !store.fresh[a] && !store.isPlayed(a) && !stepped[a];
+	}
+
+	private int tileOf(int a) {
+		return tileOfY[store.y[a]] * tiles + tileOfX[store.x[a]];
+	}
+
+	private int phaseOf(int t) {
+		return (t / tiles % 2) * 2 + t % tiles % 2;
+	}
+
+	private void checkTileSize() {
+		int reach = 2 * (sim.getPlayRadius() + 1);
+		if (minTileSize < reach) {
+			throw new RuntimeException("Tiles must be at least " + reach + " cells across for a play radius of " + sim.getPlayRadius() + ", but " + tiles + " tiles per side gives " + minTileSize);
+		}
+		return;
+	}
+
+	/**
+	 * Split <i>size</i> cells into <i>tiles</i> nearly equal runs.
+	 * @return the tile number of each cell
+	 */
+	private static int[] tileMap(int size, int tiles) {
+		int[] map = new int[size];
+		for (int t = 0; t < tiles; t++) {
+			for (int i = t * size / tiles; i < (t + 1) * size / tiles; i++) {
+				map[i] = t;
+			}
+		}
+		return map;
+	}
+
+}
@@ -0,0 +1,436 @@
+package agents;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.Properties;
+
+import ec.util.MersenneTwisterFast;
+import sim.util.Bag;
+import simulation.Engine;
+import simulation.PDWASim;
+import simulation.Parameters;
+
+/**
+ * Binary snapshot of a simulation between steps, from which it can be started again: {@link #save(PDWASim, String)} streams the state to a file, {@link #load(String)} reads it back, and a simulation with the
+ * checkpoint attached ({@link PDWASim#attachCheckpoint(Checkpoint, boolean)}) rebuilds its agents from it on start instead of placing new ones. Restarted with the saved random number generators, a run goes on
+ * exactly as it would have without stopping; restarted with a fresh seed, or with some parameters changed, it branches from the saved state.
+ * <p>
+ * The file is little-endian: the magic bytes <i>PDWS</i>, a format version, the engine, the step reached, the seed of the run (see {@link PDWASim#acquireSeed()}), grid size, population cap, next agent ID, the full parameter set (as properties text), the resource sum
+ * of each strategy, the state of the simulation's random number generator and of any tile generators, the order of the empty-cell index (if there is one), and finally one fixed-size record per agent: location,
+ * strategy, position in the grid's list of objects, direction, game memory, the RETREAT defected flag, the history of memory-n strategies, resources and ID. Agents are written in the order the engine steps them from, and everything whose order
+ * affects later draws from the generators is written in that order, so nothing has to be saved per step.
+ */
+public class Checkpoint {
+
+	public static final int MAGIC = 0x53574450;		// "PDWS" read little-endian
+	public static final int VERSION = 3;
+	private static final int RECORD_BYTES = 32;
+	private static final int BUFFER_SIZE = 1 << 16;
+
+	private final ByteBuffer data;		// the whole file
+	private final Engine engine;
+	private final long step;
+	private final long seed;
+	private final int width;
+	private final int height;
+	private final int populationCap;
+	private final int nextAgentId;
+	private final Properties params;
+	private final double[] resources;
+	private final byte[] random;
+	private final byte[][] tileRandom;
+	private final int emptyCellsAt;		// position of the empty-cell index in data, or -1 if none was saved
+	private final int nEmptyCells;
+	private final int agentsAt;
+	private final int nAgents;
+
+	private Checkpoint(ByteBuffer data) {
+		this.data = data;
+		if (data.remaining() < 8 || data.getInt() != MAGIC) {
+			throw new RuntimeException("Not a checkpoint file");
+		}
+		int version = data.getInt();
+		if (version != VERSION) {
+			throw new RuntimeException("Unsupported checkpoint version: " + version);
+		}
+		engine = Engine.values()[data.get()];
+		step = data.getLong();
+		seed = data.getLong();
+		width = data.getInt();
+		height = data.getInt();
+		populationCap = data.getInt();
+		nextAgentId = data.getInt();
+		params = new Properties();
+		try {
+			params.load(new StringReader(new String(getBytes(data), StandardCharsets.UTF_8)));
+		} catch (IOException e) {
+			throw new RuntimeException("Unable to read checkpoint parameters", e);
+		}
+		resources = new double[data.getInt()];
+		for (int s = 0; s < resources.length; s++) {
+			resources[s] = data.getDouble();
+		}
+		random = getBytes(data);
+		tileRandom = new byte[data.getInt()][];
+		for (int t = 0; t < tileRandom.length; t++) {
+			tileRandom[t] = getBytes(data);
+		}
+		nEmptyCells = data.getInt();
+		emptyCellsAt = nEmptyCells < 0 ? -1 : data.position();
+		data.position(data.position() + 4 * Math.max(0, nEmptyCells));
+		nAgents = data.getInt();
+		agentsAt = data.position();
+		if (data.remaining() != nAgents * RECORD_BYTES) {
+			throw new RuntimeException("Checkpoint file is truncated");
+		}
+	}
+
+	/**
+	 * Read a checkpoint file. The checkpoint is held in memory and never changed, so one checkpoint can be restored into any number of simulations, concurrently.
+	 * @param path file to read
+	 * @return the checkpoint
+	 */
+	public static Checkpoint load(String path) {
+		try (FileChannel channel = FileChannel.open(Paths.get(path), StandardOpenOption.READ)) {
+			if (channel.size() > Integer.MAX_VALUE) {
+				throw new RuntimeException("Checkpoint file is too large: " + path);
+			}
+			ByteBuffer data = ByteBuffer.allocate((int)channel.size());
+			while (data.hasRemaining() && channel.read(data) >= 0) {
+			}
+			data.flip();
+			return new Checkpoint(data.order(ByteOrder.LITTLE_ENDIAN));
+		} catch (IOException e) {
+			throw new RuntimeException("Unable to read checkpoint file: " + path, e);
+		}
+	}
+
+	/**
+	 * Save the state of a running simulation. Must be called between steps.
+	 * @param sim the simulation
+	 * @param path file to write
+	 */
+	public static void save(PDWASim sim, String path) {
+		try (FileChannel channel = FileChannel.open(Paths.get(path), StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+			ChunkWriter out = new ChunkWriter(channel);
+			out.ensure(64);
+			out.buffer.putInt(MAGIC);
+			out.buffer.putInt(VERSION);
+			out.buffer.put((byte)sim.getEngine().ordinal());
+			out.buffer.putLong(sim.acquireStep());
+			out.buffer.putLong(sim.acquireSeed());
+			out.buffer.putInt(sim.getGridWidth());
+			out.buffer.putInt(sim.getGridHeight());
+			out.buffer.putInt(sim.acquirePopulationCap());
+			out.buffer.putInt(sim.acquireIssuedAgentIds());
+			out.putBytes(paramText(sim));
+			PopulationRegistry population = sim.acquirePopulation();
+			int n = Strategy.count();
+			out.ensure(4 + 8 * n);
+			out.buffer.putInt(n);
+			for (int s = 0; s < n; s++) {
+				out.buffer.putDouble(population.getResources(s));
+			}
+			out.putBytes(randomState(sim.random));
+			AgentTileStepper tiles = sim.acquireTileStepper();
+			out.ensure(4);
+			out.buffer.putInt(tiles == null ? 0 : tiles.tileRandom.length);
+			if (tiles != null) {
+				for (MersenneTwisterFast r : tiles.tileRandom) {
+					out.putBytes(randomState(r));
+				}
+			}
+			OccupancyGrid grid = sim.acquireOccupancy();
+			if (grid != null && grid.isIndexingFreeCells()) {
+				out.ensure(4);
+				out.buffer.putInt(grid.countEmpty());
+				for (int i = 0; i < grid.countEmpty(); i++) {
+					out.ensure(4);
+					out.buffer.putInt(grid.emptyCellAt(i));
+				}
+			} else {
+				out.ensure(4);
+				out.buffer.putInt(-1);
+			}
+			AgentStore store = sim.acquireAgentStore();
+			if (store != null) {
+				saveAgents(store, out);
+			} else {
+				saveAgents(sim.acquireAgentScheduler(), sim.acquireSpace().allObjects, out);
+			}
+			out.flush();
+		} catch (IOException e) {
+			throw new RuntimeException("Unable to write checkpoint file: " + path, e);
+		}
+		return;
+	}
+
+	/**
+	 * Write the agents of the agent engine in the order they are scheduled, each with its position in the grid's list of all objects.
+	 */
+	private static void saveAgents(AgentScheduler scheduler, Bag allObjects, ChunkWriter out) throws IOException {
+		Map<Agent, Integer> rank = new IdentityHashMap<>();
+		for (int i = 0; i < allObjects.numObjs; i++) {
+			rank.put((Agent)allObjects.objs[i], i);
+		}
+		Agent[] agents = scheduler.scheduled();
+		out.ensure(4);
+		out.buffer.putInt(agents.length);
+		for (Agent a : agents) {
+			out.ensure(RECORD_BYTES);
+			out.buffer.putInt(a.getX());
+			out.buffer.putInt(a.getY());
+			out.buffer.put((byte)a.getStrategy().ordinal());
+			out.buffer.putInt(rank.get(a));
+			a.writeState(out.buffer);
+		}
+		return;
+	}
+
+	/**
+	 * Write the agents of an array engine in the order they are packed in the store.
+	 */
+	private static void saveAgents(AgentStore store, ChunkWriter out) throws IOException {
+		out.ensure(4);
+		out.buffer.putInt(store.size());
+		for (int i = 0; i < store.size(); i++) {
+			int a = store.slotAt(i);
+			out.ensure(RECORD_BYTES);
+			boolean located = store.isLocated();		// zeros for the well-mixed engine, which keeps no locations
+			out.buffer.putInt(located ? store.x[a] : 0);
+			out.buffer.putInt(located ? store.y[a] : 0);
+			out.buffer.put(store.strategy[a]);
+			out.buffer.putInt(i);
+			out.buffer.put(located ? store.dirx[a] : 0);
+			out.buffer.put(located ? store.diry[a] : 0);
+			out.buffer.put(store.lastSelf[a]);
+			out.buffer.put(store.lastOther[a]);
+			out.buffer.put((byte)(store.defected[a] ? 1 : 0));
+			out.buffer.putShort(store.history[a]);
+			out.buffer.putDouble(store.resources[a]);
+			out.buffer.putInt(store.id[a]);
+		}
+		return;
+	}
+
+	/**
+	 * Rebuild the agents of a simulation that is starting from this checkpoint, along with the population registry and the empty-cell index. Called by the simulation once it has made its (empty) grid and
+	 * engine, which must be the same as the saved ones.
+	 * @param sim the simulation
+	 */
+	public void restoreAgents(PDWASim sim) {
+		if (sim.getEngine() != engine) {
+			throw new RuntimeException("Checkpoint is of the " + engine + " engine but the simulation is set to use " + sim.getEngine());
+		}
+		if (engine != Engine.MIXED && (sim.getGridWidth() != width || sim.getGridHeight() != height)) {		// the well-mixed engine has no grid to match
+			throw new RuntimeException("Checkpoint is of a " + width + " x " + height + " grid but the simulation's grid is " + sim.getGridWidth() + " x " + sim.getGridHeight());
+		}
+		ByteBuffer in = data.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+		in.position(agentsAt);
+		AgentStore store = sim.acquireAgentStore();
+		if (store != null) {
+			restoreAgents(sim, store, in);
+		} else {
+			restoreAgents(sim, sim.acquireAgentScheduler(), in);
+		}
+		sim.acquirePopulation().restoreResources(resources);
+		OccupancyGrid grid = sim.acquireOccupancy();
+		if (emptyCellsAt >= 0 && grid != null && grid.isIndexingFreeCells()) {
+			in.position(emptyCellsAt);
+			int[] order = new int[nEmptyCells];
+			for (int i = 0; i < order.length; i++) {
+				order[i] = in.getInt();
+			}
+			grid.restoreEmptyCells(order);
+		}
+		return;
+	}
+
+	private void restoreAgents(PDWASim sim, AgentScheduler scheduler, ByteBuffer in) {
+		Agent[] byRank = new Agent[nAgents];
+		for (int i = 0; i < nAgents; i++) {		// schedule them in order
+			int x = in.getInt();
+			int y = in.getInt();
+			Strategy s = Strategy.forOrdinal(in.get());
+			int rank = in.getInt();
+			Agent a = scheduler.makeAgent(x, y, s);
+			a.readState(in);		// the registry's resource sums are restored afterwards
+			byRank[rank] = a;
+		}
+		for (Agent a : byRank) {		// then place them, so the grid lists them in the saved order
+			sim.acquireSpace().setObjectLocation(a, a.getX(), a.getY());
+			a.attachOccupancy();
+		}
+		return;
+	}
+
+	private void restoreAgents(PDWASim sim, AgentStore store, ByteBuffer in) {
+		OccupancyGrid grid = sim.acquireOccupancy();
+		PopulationRegistry population = sim.acquirePopulation();
+		for (int i = 0; i < nAgents; i++) {		// added in order, so they are packed in the saved order
+			int x = in.getInt();
+			int y = in.getInt();
+			Strategy s = Strategy.forOrdinal(in.get());
+			in.getInt();
+			int dirx = in.get();
+			int diry = in.get();
+			byte lastSelf = in.get();
+			byte lastOther = in.get();
+			boolean defected = in.get() != 0;
+			short history = in.getShort();
+			double r = in.getDouble();
+			int a = store.add(x, y, dirx, diry, r, s, in.getInt());
+			store.lastSelf[a] = lastSelf;
+			store.lastOther[a] = lastOther;
+			store.defected[a] = defected;
+			store.history[a] = history;
+			if (grid != null) {		// the well-mixed engine has none
+				grid.set(x, y, a);
+			}
+			population.born(s.ordinal(), r);
+		}
+		return;
+	}
+
+	/**
+	 * Put the simulation's random number generator, and those of its tiles, back in their saved states, so the run continues exactly as it would have.
+	 * @param sim the simulation
+	 */
+	public void restoreRandom(PDWASim sim) {
+		readRandomState(sim.random, random);
+		AgentTileStepper tiles = sim.acquireTileStepper();
+		int n = tiles == null ? 0 : tiles.tileRandom.length;
+		if (n != tileRandom.length) {
+			throw new RuntimeException("Checkpoint has " + tileRandom.length + " tile generators but the simulation has " + n + " tiles");
+		}
+		for (int t = 0; t < n; t++) {
+			readRandomState(tiles.tileRandom[t], tileRandom[t]);
+		}
+		return;
+	}
+
+	/**
+	 * Get the parameters the simulation had when it was saved.
+	 * @return copy of the parameter names and values, as {@link Parameters#describe(PDWASim)} gives them
+	 */
+	public Properties getParameters() {
+		Properties p = new Properties();
+		p.putAll(params);
+		return p;
+	}
+
+	/**
+	 * Get the number of steps the simulation had taken when it was saved.
+	 * @return step count
+	 */
+	public long getStep() {
+		return step;
+	}
+
+	/**
+	 * Get the seed of the run that was saved, which a run carrying on from the checkpoint with the saved generators reports as its own.
+	 * @return seed
+	 */
+	public long getSeed() {
+		return seed;
+	}
+
+	public int getPopulationCap() {
+		return populationCap;
+	}
+
+	public int getNextAgentId() {
+		return nextAgentId;
+	}
+
+	public int getAgentCount() {
+		return nAgents;
+	}
+
+	private static byte[] paramText(PDWASim sim) {
+		StringWriter w = new StringWriter();
+		try {
+			Parameters.describe(sim).store(w, null);
+		} catch (IOException e) {
+			throw new RuntimeException("Unable to record parameters", e);
+		}
+		return w.toString().getBytes(StandardCharsets.UTF_8);
+	}
+
+	private static byte[] randomState(MersenneTwisterFast random) throws IOException {
+		ByteArrayOutputStream b = new ByteArrayOutputStream();
+		try (DataOutputStream out = new DataOutputStream(b)) {
+			random.writeState(out);
+		}
+		return b.toByteArray();
+	}
+
+	private static void readRandomState(MersenneTwisterFast random, byte[] state) {
+		try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(state))) {
+			random.readState(in);
+		} catch (IOException e) {
+			throw new RuntimeException("Unable to restore random number generator", e);
+		}
+		return;
+	}
+
+	private static byte[] getBytes(ByteBuffer b) {
+		byte[] bytes = new byte[b.getInt()];
+		b.get(bytes);
+		return bytes;
+	}
+
+	/**
+	 * Streams through a fixed direct buffer to the file, writing it out whenever the next item would not fit.
+	 */
+	private static class ChunkWriter {
+		final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+		private final FileChannel channel;
+
+		ChunkWriter(FileChannel channel) {
+			this.channel = channel;
+		}
+
+		void ensure(int bytes) throws IOException {
+			if (buffer.remaining() < bytes) {
+				flush();
+			}
+			return;
+		}
+
+		void putBytes(byte[] bytes) throws IOException {
+			ensure(4);
+			buffer.putInt(bytes.length);
+			for (int i = 0; i < bytes.length; ) {
+				ensure(1);
+				int n = Math.min(buffer.remaining(), bytes.length - i);
+				buffer.put(bytes, i, n);
+				i += n;
+			}
+			return;
+		}
+
+		void flush() throws IOException {
+			buffer.flip();
+			while (buffer.hasRemaining()) {
+				channel.write(buffer);
+			}
+			buffer.clear();
+			return;
+		}
+	}
+
+}
@@ -0,0 +1,406 @@
+package agents;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.TreeMap;
+
+import sim.field.grid.SparseGrid2D;
+import sim.util.Bag;
+import simulation.PDWASim;
+
+/**
+ * Tracks the spatial clusters formed by groups of strategies on the toroidal grid, for the observer to report alongside the strategy counts. A cluster is a set of agents whose strategies are in the same
+ * group, connected through Moore neighbors (the eight surrounding cells); agents of different groups, or of no group, never connect clusters.
+ * <p>
+ * Clusters are kept in a union-find over the cells, with each cluster's cells also linked in a ring so its members can be listed. The engines report every cell they change through {@link #touched(int, int)},
+ * which marks the cell's block of the grid; when the observer samples, {@link #update()} compares only the marked blocks with what it saw last time. Cells that joined a group are united with their neighbors,
+ * which is all a join can do. A cell that left a group may have split its cluster, so each such cluster is taken apart and its remaining cells united again; clusters that nothing touched are left alone. The
+ * tiled engine marks blocks from several threads at once, which is safe because marks are only ever set, and are read after the step's threads have finished.
+ */
+public class ClusterTracker {
+
+	private static final int BLOCK = 8;		// side of a block of cells marked together
+
+	private final PDWASim sim;
+	private final int width;
+	private final int height;
+	private final String[] groupNames;
+	private final byte[] groupOf;		// group of each strategy, by ordinal, or -1
+	private final int bins;				// size bins: bin k counts clusters of 2^k to 2^(k+1) - 1 agents
+	private final int blocksX;
+	private final boolean[] dirty;
+	private final byte[] group;			// group of each cell's agent when last updated, or -1 if empty or in no group
+	private final int[] parent;
+	private final int[] size;			// of the cluster, for roots
+	private final int[] next;			// next cell of the same cluster, around a ring
+	private final int[] clusters;		// per group
+	private final List<TreeMap<Integer, Integer>> sizes;	// per group, number of clusters of each size that occurs
+	private final int[][] binCounts;
+	private final int[] mark;			// update in which a cell was last reset or its cluster's statistics taken out; minus the update once they are put back
+	private int updates;
+	private int[] changed = new int[64];
+	private int[] region = new int[64];
+
+	/**
+	 * Make a tracker for the simulation's grid that has not seen any agents yet, so the first update looks at every cell.
+	 * @param sim the simulation
+	 * @param groups groups as <code>name=STRATEGY+STRATEGY+...</code>, separated by semicolons; see {@link PDWASim#setClusterGroups(String)}
+	 */
+	public ClusterTracker(PDWASim sim, String groups) {
+		this.sim = sim;
+		width = sim.getGridWidth();
+		height = sim.getGridHeight();
+		groupOf = new byte[Strategy.count()];
+		Arrays.fill(groupOf, (byte)-1);
+		List<String> names = new ArrayList<>();
+		for (String entry : groups.split(";")) {
+			if (entry.trim().isEmpty()) {
+				continue;
+			}
+			String[] pair = entry.split("=");
+			if (pair.length != 2 || pair[0].trim().isEmpty()) {
+				throw new RuntimeException("Expected name=STRATEGY+STRATEGY in clusterGroups but found: " + entry);
+			}
+			for (String s : pair[1].split("\\+")) {
+				int ordinal = Strategy.valueOf(s.trim()).ordinal();
+				if (groupOf[ordinal] >= 0) {
+					throw new RuntimeException("Strategy " + s.trim() + " is in more than one cluster group");
+				}
+				groupOf[ordinal] = (byte)names.size();
+			}
+			names.add(pair[0].trim());
+		}
+		if (names.isEmpty() || names.size() > Byte.MAX_VALUE) {
+			throw new RuntimeException("Expected between 1 and " + Byte.MAX_VALUE + " cluster groups but found " + names.size() + ": " + groups);
+		}
+		groupNames = names.toArray(new String[0]);
+		int area = width * height;
+		bins = 32 - Integer.numberOfLeadingZeros(area);
+		blocksX = (width + BLOCK - 1) / BLOCK;
+		dirty = new boolean[blocksX * ((height + BLOCK - 1) / BLOCK)];
+		Arrays.fill(dirty, true);
+		group = new byte[area];
+		Arrays.fill(group, (byte)-1);
+		parent = new int[area];
+		size = new int[area];
+		next = new int[area];
+		mark = new int[area];
+		clusters = new int[groupNames.length];
+		sizes = new ArrayList<>();
+		for (int g = 0; g < groupNames.length; g++) {
+			sizes.add(new TreeMap<>());
+		}
+		binCounts = new int[groupNames.length][bins];
+	}
+
+	/**
+	 * Record that the agent in a cell may have changed: it arrived, left or died, or a new agent was born there.
+	 * @param x x-coordinate
+	 * @param y y-coordinate
+	 */
+	public void touched(int x, int y) {
+		dirty[(y / BLOCK) * blocksX + x / BLOCK] = true;
+		return;
+	}
+
+	/**
+	 * Bring the clusters up to date with the grid, looking only at the blocks touched since the last update. The statistics of every cluster involved are taken out before it changes and put back once it has
+	 * its final size, so they are only updated once per cluster however many cells are united.
+	 */
+	public void update() {
+		updates++;
+		int nChanged = findChanges();
+		int nRegion = 0;
+		for (int i = 0; i < nChanged; i++) {		// take apart every cluster that lost a cell, while the old clusters are still intact
+			int c = changed[i];
+			if (group[c] < 0) {
+				continue;
+			}
+			int r = find(c);
+			if (mark[r] == updates) {
+				continue;
+			}
+			removeCluster(group[c], size[r]);
+			int m = r;
+			do {
+				mark[m] = updates;
+				region = add(region, nRegion++, m);
+				m = next[m];
+			} while (m != r);
+		}
+		for (int i = 0; i < nChanged; i++) {
+			int c = changed[i];
+			group[c] = (byte)groupAt(c % width, c / width);
+			if (mark[c] != updates) {
+				mark[c] = updates;
+				region = add(region, nRegion++, c);
+			}
+		}
+		for (int i = 0; i < nRegion; i++) {			// every cell in a cluster that was taken apart, or that changed, starts again on its own
+			int c = region[i];
+			parent[c] = c;
+			size[c] = 1;
+			next[c] = c;
+		}
+		for (int i = 0; i < nRegion; i++) {
+			int c = region[i];
+			if (group[c] >= 0) {
+				uniteNeighbors(c);
+			}
+		}
+		for (int i = 0; i < nRegion; i++) {			// every cluster that changed includes a cell of the region
+			int c = region[i];
+			if (group[c] < 0) {
+				continue;
+			}
+			int r = find(c);
+			if (mark[r] != -updates) {
+				mark[r] = -updates;
+				addCluster(group[r], size[r]);
+			}
+		}
+		return;
+	}
+
+	/**
+	 * Read the marked blocks and list the cells whose group is no longer the one last seen, clearing the marks.
+	 * @return number of changed cells, at the start of {@link #changed}
+	 */
+	private int findChanges() {
+		int n = 0;
+		for (int b = 0; b < dirty.length; b++) {
+			if (!dirty[b]) {
+				continue;
+			}
+			dirty[b] = false;
+			int x0 = (b % blocksX) * BLOCK;
+			int y0 = (b / blocksX) * BLOCK;
+			int x1 = Math.min(x0 + BLOCK, width);
+			int y1 = Math.min(y0 + BLOCK, height);
+			for (int y = y0; y < y1; y++) {
+				for (int x = x0; x < x1; x++) {
+					int c = y * width + x;
+					if (groupAt(x, y) != group[c]) {
+						changed = add(changed, n++, c);
+					}
+				}
+			}
+		}
+		return n;
+	}
+
+	/**
+	 * Get the group of the agent in a cell, from whichever grid the engine keeps.
+	 * @return the group, or -1 if the cell is empty or its agent's strategy is in no group
+	 */
+	private int groupAt(int x, int y) {
+		AgentStore store = sim.acquireAgentStore();
+		OccupancyGrid occupancy = sim.acquireOccupancy();
+		if (occupancy != null) {
+			int slot = occupancy.get(x, y);
+			if (slot == OccupancyGrid.EMPTY) {
+				return -1;
+			}
+			return groupOf[store != null ? store.getStrategyOrdinal(slot) : sim.acquireAgentSlots().get(slot).getStrategy().ordinal()];
+		}
+		SparseGrid2D space = sim.acquireSpace();
+		Bag b = space.getObjectsAtLocation(x, y);
+		if (b == null || b.numObjs == 0) {
+			return -1;
+		}
+		return groupOf[((Agent)b.objs[0]).getStrategy().ordinal()];
+	}
+
+	/**
+	 * Unite a cell with every Moore neighbor of the same group, wrapping toroidally.
+	 */
+	private void uniteNeighbors(int c) {
+		int cx = c % width;
+		int cy = c / width;
+		for (int dx = -1; dx <= 1; dx++) {
+			int x = Math.floorMod(cx + dx, width);
+			for (int dy = -1; dy <= 1; dy++) {
+				int n = Math.floorMod(cy + dy, height) * width + x;
+				if (n != c && group[n] == group[c]) {
+					union(c, n);
+				}
+			}
+		}
+		return;
+	}
+
+	private int find(int c) {
+		while (parent[c] != c) {
+			parent[c] = parent[parent[c]];		// path halving
+			c = parent[c];
+		}
+		return c;
+	}
+
+	/**
+	 * Merge the clusters of two cells of the same group, the smaller under the larger, and splice their rings together. A cluster that nothing touched has its statistics taken out the first time it is merged.
+	 */
+	private void union(int a, int b) {
+		int ra = find(a);
+		int rb = find(b);
+		if (ra == rb) {
+			return;
+		}
+		takeOut(ra);
+		takeOut(rb);
+		if (size[ra] < size[rb]) {
+			int t = ra;
+			ra = rb;
+			rb = t;
+		}
+		parent[rb] = ra;
+		size[ra] += size[rb];
+		int t = next[ra];
+		next[ra] = next[rb];
+		next[rb] = t;
+		return;
+	}
+
+	/**
+	 * Take the statistics of a cluster out, unless they already are for this update.
+	 */
+	private void takeOut(int root) {
+		if (mark[root] != updates) {
+			mark[root] = updates;
+			removeCluster(group[root], size[root]);
+		}
+		return;
+	}
+
+	private void addCluster(int g, int s) {
+		clusters[g]++;
+		sizes.get(g).merge(s, 1, Integer::sum);
+		binCounts[g][31 - Integer.numberOfLeadingZeros(s)]++;
+		return;
+	}
+
+	private void removeCluster(int g, int s) {
+		clusters[g]--;
+		TreeMap<Integer, Integer> counts = sizes.get(g);
+		int n = counts.get(s);
+		if (n == 1) {
+			counts.remove(s);
+		} else {
+			counts.put(s, n - 1);
+		}
+		binCounts[g][31 - Integer.numberOfLeadingZeros(s)]--;
+		return;
+	}
+
+	/**
+	 * Debugging aid: count the clusters again from scratch with a flood fill over the whole grid, and check the tracked statistics agree. Called by the observer when the population is being verified.
+	 */
+	public void verify() {
+		int area = width * height;
+		boolean[] seen = new boolean[area];
+		int[] queue = new int[area];
+		int[] count = new int[groupNames.length];
+		int[] max = new int[groupNames.length];
+		int[][] bin = new int[groupNames.length][bins];
+		for (int c = 0; c < area; c++) {
+			int g = groupAt(c % width, c / width);
+			if (g < 0 || seen[c]) {
+				continue;
+			}
+			seen[c] = true;
+			queue[0] = c;
+			int n = 1;
+			for (int head = 0; head < n; head++) {
+				int cx = queue[head] % width;
+				int cy = queue[head] / width;
+				for (int dx = -1; dx <= 1; dx++) {
+					int x = Math.floorMod(cx + dx, width);
+					for (int dy = -1; dy <= 1; dy++) {
+						int y = Math.floorMod(cy + dy, height);
+						int m = y * width + x;
+						if (!seen[m] && groupAt(x, y) == g) {
+							seen[m] = true;
+							queue[n++] = m;
+						}
+					}
+				}
+			}
+			count[g]++;
+			max[g] = Math.max(max[g], n);
+			bin[g][31 - Integer.numberOfLeadingZeros(n)]++;
+		}
+		for (int g = 0; g < groupNames.length; g++) {
+			if (count[g] != clusters[g] || max[g] != getLargest(g) || !Arrays.equals(bin[g], binCounts[g])) {
+				throw new RuntimeException("Cluster tracker holds " + clusters[g] + " " + groupNames[g] + " clusters, the largest of " + getLargest(g) + ", but there are " + count[g] + ", the largest of "
+						+ max[g] + " at step " + sim.acquireStep());
+			}
+		}
+		return;
+	}
+
+	private static int[] add(int[] list, int n, int value) {
+		if (n == list.length) {
+			list = Arrays.copyOf(list, n * 2);
+		}
+		list[n] = value;
+		return list;
+	}
+
+	/**
+	 * Get the names of the columns {@link #fill(int[], int)} writes: for each group, its number of clusters, the size of its largest cluster, and the number of clusters in each size bin, named by the bin's
+	 * smallest size (<i>group</i>Size1, <i>group</i>Size2, <i>group</i>Size4 and so on, up to the area of the grid).
+	 * @return new array of column names
+	 */
+	public String[] columns() {
+		String[] columns = new String[groupNames.length * (2 + bins)];
+		int i = 0;
+		for (String name : groupNames) {
+			columns[i++] = name + "Clusters";
+			columns[i++] = name + "Largest";
+			for (int k = 0; k < bins; k++) {
+				columns[i++] = name + "Size" + (1 << k);
+			}
+		}
+		return columns;
+	}
+
+	/**
+	 * Write the statistics as of the last update into a row of observer data.
+	 * @param row data row
+	 * @param offset index of the first column written; see {@link #columns()}
+	 */
+	public void fill(int[] row, int offset) {
+		for (int g = 0; g < groupNames.length; g++) {
+			row[offset++] = clusters[g];
+			row[offset++] = getLargest(g);
+			System.arraycopy(binCounts[g], 0, row, offset, bins);
+			offset += bins;
+		}
+		return;
+	}
+
+	public int getGroupCount() {
+		return groupNames.length;
+	}
+
+	/**
+	 * Number of clusters in a group as of the last update.
+	 * @param g group index, in the order the groups were given
+	 * @return cluster count
+	 */
+	public int getClusters(int g) {
+		return clusters[g];
+	}
+
+	/**
+	 * Size of the largest cluster in a group as of the last update.
+	 * @param g group index, in the order the groups were given
+	 * @return number of agents in the cluster, or 0 if the group has no agents
+	 */
+	public int getLargest(int g) {
+		TreeMap<Integer, Integer> counts = sizes.get(g);
+		return counts.isEmpty() ? 0 : counts.lastKey();
+	}
+
+}
@@ -0,0 +1,66 @@
+package agents;
+
+import ec.util.MersenneTwisterFast;
+
+/**
+ * Finds a random empty cell near a location without allocating: the cells of the neighborhood are drawn in random order by a partial Fisher-Yates shuffle of their offsets, held in a scratch buffer that is
+ * reused from call to call, until an empty one turns up. Each instance keeps its own buffer, so it must only be used by one thread at a time.
+ */
+public class EmptyCellSearch {
+
+	/**
+	 * A toroidal grid whose cells can be tested for occupants.
+	 */
+	public interface Cells {
+		int getWidth();
+
+		int getHeight();
+
+		/**
+		 * Is the given cell empty? Coordinates are within the grid.
+		 */
+		boolean isEmpty(int x, int y);
+	}
+
+	private int[] offsets = new int[0];
+
+	/**
+	 * Pick a random empty cell within <i>radius</i> of (<i>x</i>, <i>y</i>), wrapping toroidally. Every cell in the neighborhood, the center included, is equally likely to be picked among the empty ones.
+	 * @param cells grid to search
+	 * @param x center x-coordinate
+	 * @param y center y-coordinate
+	 * @param radius neighborhood radius
+	 * @param random random number generator
+	 * @return the cell, packed as y * width + x, or -1 if every cell nearby is occupied
+	 */
+	public int nearby(Cells cells, int x, int y, int radius, MersenneTwisterFast random) {
+		int width = cells.getWidth();
+		int height = cells.getHeight();
+		int side = 2 * radius + 1;
+		int n = side * side;
+		if (offsets.length < n) {
+			offsets = new int[n];
+		}
+		for (int i = 0; i < n; i++) {
+			offsets[i] = i;
+		}
+		for (int i = 0; i < n; i++) {		// draw offsets in random order until an empty cell turns up
+			int j = i + random.nextInt(n - i);
+			int offset = offsets[j];
+			offsets[j] = offsets[i];
+			offsets[i] = offset;
+			int nx = wrap(x + offset / side - radius, width);
+			int ny = wrap(y + offset % side - radius, height);
+			if (cells.isEmpty(nx, ny)) {
+				return ny * width + nx;
+			}
+		}
+		return -1;
+	}
+
+	private static int wrap(int v, int size) {
+		v %= size;
+		return v < 0 ? v + size : v;
+	}
+
+}
@@ -1,39 +1,68 @@
 package agents;
 
+import java.util.Arrays;
+
 import sim.engine.SimState;
 import sim.engine.Steppable;
 import sim.engine.Stoppable;
 import sim.field.grid.SparseGrid2D;
 import sim.util.Bag;
+import output.MetricsSink;
 import simulation.PDWASim;
+import simulation.Termination;
 
 public class Observer implements Steppable {
 	
-	private int nNaiveC;
-	private int nNaiveD;
-	private int nWalkawayC;
-	private int nWalkawayD;
-	private int nTFTStationary;
-	private int nTFTMobile;
-	private int nPAVLOVStationary;
-	private int nPAVLOVMobile;
-	private int nRealisticTFT;
-	private int nRetreat;
-	
 	private PDWASim sim;
 	private SparseGrid2D space;
+	private AgentStore store;
+	private PopulationRegistry population;
+	private TerminationCriteria criteria;
 	private Stoppable stopper;
+	private MetricsSink sink;
+	private ClusterTracker clusters;
+	private int[] counts = new int[Strategy.count()];
+	private int[] row;
 	
-	public Observer(PDWASim sim) {
+	/**
+	 * Make an observer that writes its data to the given sink.
+	 * @param sim the simulation
+	 * @param sink destination for the data, with a column for each registered strategy (see {@link Strategy#columns()}) followed by the cluster statistics if clusters are tracked (see
+	 * {@link ClusterTracker#columns()}); opened here and closed by {@link #finish()}
+	 */
+	public Observer(PDWASim sim, MetricsSink sink) {
 		this.sim = sim;
+		this.sink = sink;
 		space = sim.acquireSpace();
-		printHeaders();
+		store = sim.acquireAgentStore();
+		population = sim.acquirePopulation();
+		criteria = new TerminationCriteria(sim);
+		clusters = sim.acquireClusterTracker();
+		if (clusters == null) {
+			row = counts;
+			sink.open(Strategy.columns());
+		} else {
+			String[] columns = Strategy.columns();
+			String[] clusterColumns = clusters.columns();
+			String[] all = Arrays.copyOf(columns, columns.length + clusterColumns.length);
+			System.arraycopy(clusterColumns, 0, all, columns.length, clusterColumns.length);
+			row = new int[all.length];
+			sink.open(all);
+		}
 	}
 
 	@Override
 	public void step(SimState state) {
-		countAndReset();
-		printDataline();
+		count();
+		recordDataline(sim.acquireStep());
+		return;
+	}
+	
+	/**
+	 * Close the data sink with why and when the run ended; called when the simulation finishes.
+	 */
+	public void finish() {
+		sink.close(sim.acquireTermination(), sim.acquireStep());
 		return;
 	}
 	
@@ -47,69 +76,86 @@ public class Observer implements Steppable {
 	}
 	
 	/**
-	 * Reset the counters then count the number of agents of each type into the counters; also resets all agents so they can be played in the next time step.
+	 * Get the most recently sampled count of agents of each strategy, indexed by strategy ordinal (which is also the column order of the data lines). For the current counts, ask the simulation's
+	 * {@link PopulationRegistry}.
+	 * @return copy of the sampled counts
 	 */
-	private void countAndReset() {
-		nNaiveC = nNaiveD = nWalkawayC = nWalkawayD = nTFTStationary = nTFTMobile = nPAVLOVStationary = nPAVLOVMobile = nRealisticTFT = nRetreat = 0;	// reset counters
-		Bag b = space.allObjects;
-		for (int i = 0; i < b.numObjs; i++) {
-			Agent a = (Agent)b.objs[i];
-			switch (a.getStrategy()) {
-				case NAIVE_C:
-					nNaiveC++;
-					break;
-				case NAIVE_D:
-					nNaiveD++;
-					break;
-				case PAVLOV_MOBILE:
-					nPAVLOVMobile++;
-					break;
-				case PAVLOV_STATIONARY:
-					nPAVLOVStationary++;
-					break;
-				case TFT_MOBILE:
-					nTFTMobile++;
-					break;
-				case TFT_STATIONARY:
-					nTFTStationary++;
-					break;
-				case WALKAWAY_C:
-					nWalkawayC++;
-					break;
-				case WALKAWAY_D:
-					nWalkawayD++;
-					break;
-				case REALISTIC_TFT:
-					nRealisticTFT++;
-					break;
-				case RETREAT:
-					nRetreat++;
-					break;
-				default:
-					throw new RuntimeException("Found an agent with an uncountable strategy: " + a.getStrategy());
+	public int[] getCounts() {
+		return counts.clone();
+	}
+	
+	/**
+	 * Read the number of agents of each type from the population registry, bring the clusters up to date if they are tracked, and end the run after this step if it has met one of its termination criteria.
+	 */
+	private void count() {
+		population.getCounts(counts);
+		if (clusters != null) {
+			clusters.update();
+		}
+		if (sim.isVerifyPopulation()) {
+			verifyPopulation();
+			if (clusters != null) {
+				clusters.verify();
 			}
-			a.reset();
 		}
-		if (b.numObjs == 0) {	// if there are no more agents, end after this step
+		Termination reason = criteria.check(counts, population.getTotal());
+		if (reason != null) {
+			sim.terminate(reason);
 			stopper.stop();
 		}
 		return;
 	}
 	
 	/**
-	 * Print current line of data from the counters.
+	 * Count the agents of each strategy and their resources with a full scan, and check the population registry agrees. Resource sums are accumulated in a different order, so they are only required to agree
+	 * to within rounding.
 	 */
-	private void printDataline() {
-		long steps = sim.schedule.getSteps();
-		System.out.println(steps + "\t" + nNaiveC + "\t" + nNaiveD + "\t" + nWalkawayC + "\t" + nWalkawayD + "\t" + nTFTStationary + "\t" + nTFTMobile + "\t" + nPAVLOVStationary + "\t" + nPAVLOVMobile + "\t" + nRealisticTFT + "\t" + nRetreat);
+	private void verifyPopulation() {
+		int n = Strategy.count();
+		int[] counts = new int[n];
+		double[] resources = new double[n];
+		int total;
+		if (store != null) {
+			total = store.size();
+			for (int i = 0; i < total; i++) {
+				int slot = store.slotAt(i);
+				counts[store.getStrategyOrdinal(slot)]++;
+				resources[store.getStrategyOrdinal(slot)] += store.getResources(slot);
+			}
+		} else {
+			Bag b = space.allObjects;
+			total = b.numObjs;
+			for (int i = 0; i < total; i++) {
+				Agent a = (Agent)b.objs[i];
+				counts[a.getStrategy().ordinal()]++;
+				resources[a.getStrategy().ordinal()] += a.getResources();
+			}
+		}
+		if (total != population.getTotal()) {
+			throw new RuntimeException("Population registry holds " + population.getTotal() + " agents but there are " + total + " at step " + sim.acquireStep());
+		}
+		for (int s = 0; s < n; s++) {
+			if (counts[s] != population.getCount(s)) {
+				throw new RuntimeException("Population registry holds " + population.getCount(s) + " " + Strategy.forOrdinal(s) + " agents but there are " + counts[s] + " at step " + sim.acquireStep());
+			}
+			if (Math.abs(resources[s] - population.getResources(s)) > 1e-6 * Math.max(1, Math.abs(resources[s]))) {
+				throw new RuntimeException("Population registry holds " + population.getResources(s) + " resources for " + Strategy.forOrdinal(s) + " agents but they have " + resources[s] + " at step "
+						+ sim.acquireStep());
+			}
+		}
 		return;
 	}
 	
 	/**
-	 * Print the data file headers at the beginning of the simulation.
+	 * Send the current line of data to the sink.
+	 * @param steps current step
 	 */
-	private void printHeaders() {
-		System.out.println("step\tnNaiveC\tnNaiveD\tnWalkawayC\tnWalkawayD\tnTFTStationary\tnTFTMobile\tnPAVLOVStationary\tnPAVLOVMobile\tnRealisticTFT\tnRetreat");
+	private void recordDataline(long steps) {
+		if (clusters != null) {
+			System.arraycopy(counts, 0, row, 0, counts.length);
+			clusters.fill(row, counts.length);
+		}
+		sink.record(steps, row);
 		return;
 	}
 	
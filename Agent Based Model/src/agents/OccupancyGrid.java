@@ -0,0 +1,257 @@
+package agents;
+
+import java.util.Arrays;
+
+import ec.util.MersenneTwisterFast;
+
+/**
+ * Dense toroidal occupancy index: one int per cell holding the slot of the agent there, or {@link #EMPTY}. Lookups are a single array read, with none of the hashing or Bag allocation of a SparseGrid2D, at the
+ * price of memory proportional to the grid area.
+ * <p>
+ * Optionally the grid also indexes its empty cells, so a uniformly random empty cell can be found in constant time at any density. The index is a packed array of the empty cells plus each cell's position in
+ * that array (-1 if occupied); filling a cell swaps the last empty cell into its place, and a move simply puts the cell moved from where the cell moved to was. Keeping it costs a little on every move, and the
+ * index must not be updated from more than one thread at a time.
+ */
+public class OccupancyGrid implements EmptyCellSearch.Cells {
+
+	public static final int EMPTY = -1;
+
+	private final int width;
+	private final int height;
+	private final int[] cells;
+	private final int[] freeCells;		// empty cells, packed into [0, nFree); null unless indexing
+	private final int[] freePos;		// position of each cell in freeCells, or -1 if occupied
+	private int nFree;
+
+	public OccupancyGrid(int width, int height) {
+		this(width, height, false);
+	}
+
+	/**
+	 * Make an empty grid.
+	 * @param width grid width
+	 * @param height grid height
+	 * @param indexFreeCells whether to keep the index of empty cells used by {@link #randomEmptyCell(MersenneTwisterFast)}
+	 */
+	public OccupancyGrid(int width, int height, boolean indexFreeCells) {
+		this.width = width;
+		this.height = height;
+		cells = new int[width * height];
+		Arrays.fill(cells, EMPTY);
+		if (indexFreeCells) {
+			freeCells = new int[cells.length];
+			freePos = new int[cells.length];
+			for (int c = 0; c < cells.length; c++) {
+				freeCells[c] = c;
+				freePos[c] = c;
+			}
+			nFree = cells.length;
+		} else {
+			freeCells = null;
+			freePos = null;
+		}
+	}
+
+	/**
+	 * Get the occupant of a cell. Coordinates must already be within the grid.
+	 * @param x x-coordinate
+	 * @param y y-coordinate
+	 * @return slot of the agent in the cell, or {@link #EMPTY}
+	 */
+	public int get(int x, int y) {
+		return cells[y * width + x];
+	}
+
+	/**
+	 * Is the given cell empty? Coordinates must already be within the grid.
+	 * @param x x-coordinate
+	 * @param y y-coordinate
+	 * @return true if nobody is in the cell
+	 */
+	@Override
+	public boolean isEmpty(int x, int y) {
+		return cells[y * width + x] == EMPTY;
+	}
+
+	/**
+	 * Record an agent in a cell.
+	 * @param x x-coordinate
+	 * @param y y-coordinate
+	 * @param slot the agent's slot
+	 */
+	public void set(int x, int y, int slot) {
+		int c = y * width + x;
+		if (freePos != null && cells[c] == EMPTY) {
+			int pos = freePos[c];
+			int last = freeCells[--nFree];
+			freeCells[pos] = last;
+			freePos[last] = pos;
+			freePos[c] = -1;
+		}
+		cells[c] = slot;
+		return;
+	}
+
+	/**
+	 * Mark a cell as empty.
+	 * @param x x-coordinate
+	 * @param y y-coordinate
+	 */
+	public void clear(int x, int y) {
+		int c = y * width + x;
+		if (freePos != null && cells[c] != EMPTY) {
+			freeCells[nFree] = c;
+			freePos[c] = nFree++;
+		}
+		cells[c] = EMPTY;
+		return;
+	}
+
+	/**
+	 * Move an agent from one cell to another, which must be empty.
+	 * @param fromx old x-coordinate
+	 * @param fromy old y-coordinate
+	 * @param tox new x-coordinate
+	 * @param toy new y-coordinate
+	 */
+	public void move(int fromx, int fromy, int tox, int toy) {
+		int from = fromy * width + fromx;
+		int to = toy * width + tox;
+		if (freePos != null) {
+			int pos = freePos[to];
+			freeCells[pos] = from;
+			freePos[from] = pos;
+			freePos[to] = -1;
+		}
+		cells[to] = cells[from];
+		cells[from] = EMPTY;
+		return;
+	}
+
+	/**
+	 * Is this grid indexing its empty cells?
+	 * @return true if {@link #randomEmptyCell(MersenneTwisterFast)} can be used
+	 */
+	public boolean isIndexingFreeCells() {
+		return freePos != null;
+	}
+
+	/**
+	 * Number of empty cells. Only available when indexing empty cells.
+	 * @return empty cell count
+	 */
+	public int countEmpty() {
+		return nFree;
+	}
+
+	/**
+	 * Pick an empty cell uniformly at random, with a single draw from the given generator. Only available when indexing empty cells.
+	 * @param random random number generator
+	 * @return the cell, as y * width + x, or -1 if the grid is full
+	 */
+	public int randomEmptyCell(MersenneTwisterFast random) {
+		if (nFree == 0) {
+			return -1;
+		}
+		return freeCells[random.nextInt(nFree)];
+	}
+
+	/**
+	 * Get the i-th empty cell of the index. The order depends on the history of the grid, and is what {@link #randomEmptyCell(MersenneTwisterFast)} draws from, so it is saved with a {@link Checkpoint}.
+	 * @param i index in [0, {@link #countEmpty()})
+	 * @return the cell, as y * width + x
+	 */
+	int emptyCellAt(int i) {
+		return freeCells[i];
+	}
+
+	/**
+	 * Put the index of empty cells into the given order, which must list exactly the cells that are empty now.
+	 * @param order empty cells, as y * width + x
+	 */
+	void restoreEmptyCells(int[] order) {
+		if (order.length != nFree) {
+			throw new RuntimeException("Expected " + nFree + " empty cells but was given " + order.length);
+		}
+		for (int i = 0; i < order.length; i++) {
+			int c = order[i];
+			if (c < 0 || c >= cells.length || cells[c] != EMPTY) {
+				throw new RuntimeException("Cell " + c + " is not empty");
+			}
+			freeCells[i] = c;
+			freePos[c] = i;
+		}
+		return;
+	}
+
+	/**
+	 * Count the occupied cells in the Moore neighborhood of (<i>x</i>, <i>y</i>), including the center, wrapping toroidally. Like every neighborhood scan here, this covers the columns from
+	 * <i>x</i> - <i>radius</i> on and the rows from <i>y</i> - <i>radius</i> on, but no more than {@link #spanX(int)} columns and {@link #spanY(int)} rows, so each cell is counted once at any radius.
+	 * @param x center x-coordinate
+	 * @param y center y-coordinate
+	 * @param radius neighborhood radius
+	 * @return number of occupied cells
+	 */
+	public int countMoore(int x, int y, int radius) {
+		int count = 0;
+		int columns = spanX(radius);
+		int rows = spanY(radius);
+		for (int i = 0; i < columns; i++) {
+			int col = stx(x - radius + i);
+			for (int j = 0; j < rows; j++) {
+				if (cells[sty(y - radius + j) * width + col] != EMPTY) {
+					count++;
+				}
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * Number of columns in a Moore neighborhood of the given radius: 2 * <i>radius</i> + 1, but no more than the grid width. As in MASON's toroidal neighborhoods, a neighborhood wider than the grid is cut
+	 * down to one copy of each column rather than visiting columns twice.
+	 * @param radius neighborhood radius
+	 * @return number of columns
+	 */
+	public int spanX(int radius) {
+		return (int)Math.min(2L * radius + 1, width);
+	}
+
+	/**
+	 * Number of rows in a Moore neighborhood of the given radius; see {@link #spanX(int)}.
+	 * @param radius neighborhood radius
+	 * @return number of rows
+	 */
+	public int spanY(int radius) {
+		return (int)Math.min(2L * radius + 1, height);
+	}
+
+	/**
+	 * Wrap an x-coordinate toroidally, however far outside the grid it is.
+	 * @param x x-coordinate
+	 * @return wrapped x-coordinate
+	 */
+	public int stx(int x) {
+		return Math.floorMod(x, width);
+	}
+
+	/**
+	 * Wrap a y-coordinate toroidally, however far outside the grid it is.
+	 * @param y y-coordinate
+	 * @return wrapped y-coordinate
+	 */
+	public int sty(int y) {
+		return Math.floorMod(y, height);
+	}
+
+	@Override
+	public int getWidth() {
+		return width;
+	}
+
+	@Override
+	public int getHeight() {
+		return height;
+	}
+
+}
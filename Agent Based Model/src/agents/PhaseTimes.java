@@ -0,0 +1,79 @@
+package agents;
+
+/**
+ * Cumulative wall-clock time spent in each phase of the agents' turns. Timing is off unless switched on, and then costs two calls to System.nanoTime() per phase of every turn; when off, each phase only tests
+ * a flag. The switch can be thrown from any thread, such as a JMX client's, and takes effect at the start of the next step, when the engine calls {@link #startStep()}.
+ * <p>
+ * The totals are written by the thread stepping the agents without synchronization, so readers on other threads see values that are current to within a step or so. Concurrently played tiles each time into
+ * their own instance, merged into the simulation's after every step.
+ */
+public class PhaseTimes {
+
+	public static final int PARTNER = 0;		// neighbor lookup: picking a partner
+	public static final int STRATEGY = 1;		// strategy selection
+	public static final int PAYOFF = 2;			// the prisoner's dilemma payoff
+	public static final int MOVE = 3;			// movement
+	public static final int LIFE = 4;			// reproduction and death
+
+	/**
+	 * Names of the phases, in phase number order.
+	 */
+	public static final String[] NAMES = { "neighborLookup", "strategySelection", "payoff", "movement", "reproduction" };
+
+	private final long[] nanos = new long[NAMES.length];
+	private volatile boolean enabled;
+	boolean on;		// enabled, as of the start of the current step; read by the agents in the hot path
+
+	/**
+	 * Switch timing on or off from the start of the next step.
+	 * @param enabled true to time the phases
+	 */
+	public void setEnabled(boolean enabled) {
+		this.enabled = enabled;
+		return;
+	}
+
+	public boolean isEnabled() {
+		return enabled;
+	}
+
+	/**
+	 * Pick up any change to the switch; called by the engine at the start of every step, on the stepping thread.
+	 */
+	void startStep() {
+		on = enabled;
+		return;
+	}
+
+	/**
+	 * Add the time since <i>start</i> to a phase.
+	 * @param phase phase number
+	 * @param start System.nanoTime() when the phase began
+	 */
+	void add(int phase, long start) {
+		nanos[phase] += System.nanoTime() - start;
+		return;
+	}
+
+	/**
+	 * Add the times recorded in another instance to this one, then clear them there.
+	 * @param other times from concurrently played tiles
+	 */
+	void merge(PhaseTimes other) {
+		for (int p = 0; p < nanos.length; p++) {
+			nanos[p] += other.nanos[p];
+			other.nanos[p] = 0;
+		}
+		return;
+	}
+
+	/**
+	 * Total time spent in a phase since the run started.
+	 * @param phase phase number
+	 * @return nanoseconds
+	 */
+	public long getNanos(int phase) {
+		return nanos[phase];
+	}
+
+}
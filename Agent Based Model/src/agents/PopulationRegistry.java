@@ -0,0 +1,151 @@
+package agents;
+
+import java.util.Arrays;
+
+/**
+ * Running totals of the population: the number of agents of each strategy and the sum of their resources, updated on every birth, death and change in resources so they can be read without scanning the agents.
+ * Strategies are indexed by ordinal. Births and deaths are also counted over the whole run.
+ */
+public class PopulationRegistry {
+
+	private final int[] counts;
+	private final double[] resources;
+	private int total;
+	private long births;
+	private long deaths;
+
+	public PopulationRegistry() {
+		counts = new int[Strategy.count()];
+		resources = new double[counts.length];
+	}
+
+	/**
+	 * Record a new agent.
+	 * @param strategy strategy ordinal
+	 * @param r the agent's resources
+	 */
+	void born(int strategy, double r) {
+		counts[strategy]++;
+		resources[strategy] += r;
+		total++;
+		births++;
+		return;
+	}
+
+	/**
+	 * Record an agent's death.
+	 * @param strategy strategy ordinal
+	 * @param r the agent's resources at death
+	 */
+	void died(int strategy, double r) {
+		counts[strategy]--;
+		resources[strategy] -= r;
+		total--;
+		deaths++;
+		return;
+	}
+
+	/**
+	 * Record a change in an agent's resources.
+	 * @param strategy strategy ordinal
+	 * @param delta change in resources
+	 */
+	void changeResources(int strategy, double delta) {
+		resources[strategy] += delta;
+		return;
+	}
+
+	/**
+	 * Add the resource changes recorded in another registry to this one, then clear them there. Used to combine changes made concurrently into separate registries.
+	 * @param delta registry holding only resource changes
+	 */
+	void mergeResources(PopulationRegistry delta) {
+		for (int s = 0; s < resources.length; s++) {
+			resources[s] += delta.resources[s];
+		}
+		Arrays.fill(delta.resources, 0);
+		return;
+	}
+
+	/**
+	 * Replace the resource sums, for instance with those saved in a {@link Checkpoint}, which were accumulated in a different order than recounting the agents would and so may differ in the last bits.
+	 * @param sums resource sum of each strategy
+	 */
+	void restoreResources(double[] sums) {
+		System.arraycopy(sums, 0, resources, 0, resources.length);
+		return;
+	}
+
+	/**
+	 * Total number of agents.
+	 * @return population size
+	 */
+	public int getTotal() {
+		return total;
+	}
+
+	/**
+	 * Number of agents born so far in this run, counting the initial agents (or those restored from a checkpoint).
+	 * @return birth count
+	 */
+	public long getBirths() {
+		return births;
+	}
+
+	/**
+	 * Number of agents that have died so far in this run.
+	 * @return death count
+	 */
+	public long getDeaths() {
+		return deaths;
+	}
+
+	/**
+	 * Number of agents with a strategy.
+	 * @param strategy strategy ordinal
+	 * @return count
+	 */
+	public int getCount(int strategy) {
+		return counts[strategy];
+	}
+
+	/**
+	 * Copy the count of every strategy into an array, in ordinal order.
+	 * @param into array with room for every strategy
+	 */
+	public void getCounts(int[] into) {
+		System.arraycopy(counts, 0, into, 0, counts.length);
+		return;
+	}
+
+	/**
+	 * Total resources held by agents with a strategy.
+	 * @param strategy strategy ordinal
+	 * @return resource sum
+	 */
+	public double getResources(int strategy) {
+		return resources[strategy];
+	}
+
+	/**
+	 * Total resources held by all agents.
+	 * @return resource sum
+	 */
+	public double getTotalResources() {
+		double sum = 0;
+		for (double r : resources) {
+			sum += r;
+		}
+		return sum;
+	}
+
+	/**
+	 * Mean resources of the agents with a strategy.
+	 * @param strategy strategy ordinal
+	 * @return mean resources, or 0 if there are none
+	 */
+	public double getMeanResources(int strategy) {
+		return counts[strategy] == 0 ? 0 : resources[strategy] / counts[strategy];
+	}
+
+}
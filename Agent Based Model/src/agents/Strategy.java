@@ -1,14 +1,324 @@
 package agents;
 
-public enum Strategy {
-	NAIVE_C,
-	NAIVE_D,
-	WALKAWAY_C,
-	WALKAWAY_D,
-	TFT_STATIONARY,
-	TFT_MOBILE,
-	PAVLOV_STATIONARY,
-	PAVLOV_MOBILE,
-	REALISTIC_TFT,
-	RETREAT
+import java.util.ArrayList;
+import java.util.List;
+
+import agents.Agent.Action;
+
+/**
+ * A game strategy. Strategies are registered once, each with its rule for responding to the last game, whether it moves when no partner is found, the name of its data column and its color in the GUI, and
+ * are numbered in the order they are registered; the ten built-in strategies are always registered first, in the order below, so their ordinals (and the data columns) are the same as ever.
+ * <p>
+ * Every response of a strategy is computed when it is registered and packed into {@link StrategyTable}, so the rule itself is never called during play and agents of any number of strategies are stepped by the
+ * same few array reads. More strategies must be registered before any simulation is started, since population counts and data columns are sized from the strategies registered at that time.
+ * <p>
+ * Strategies that look back over more than the last game are registered with {@link #registerMemory}, as a bitmask over the history of their last <i>n</i> games; see {@link StrategyTable}.
+ */
+public final class Strategy {
+
+	/**
+	 * A strategy's response to its memory of the last game: the action to play and, for each action the partner might play, whether to move afterwards. Make the response with
+	 * {@link StrategyTable#respond(Action, boolean, boolean, boolean)}, and add {@link StrategyTable#markDefected(int)} to make the agent remember it was defected against.
+	 */
+	public interface Rule {
+		/**
+		 * @param defected has this agent been defected against before (as marked by a previous response)?
+		 * @param self this agent's action in the last game
+		 * @param other the partner's action in the last game
+		 * @return packed response
+		 */
+		int respond(boolean defected, Action self, Action other);
+	}
+
+	/**
+	 * Whether a memory-n strategy defects, given the games it remembers. Used to build its bitmask with {@link Strategy#defectMask(int, HistoryRule)}.
+	 */
+	public interface HistoryRule {
+		/**
+		 * @param games number of games remembered, from 0 up to the strategy's memory
+		 * @param self the agent's own actions, one bit per game with the most recent game in the lowest bit, 1 for DEFECT
+		 * @param other the partners' actions, in the same form
+		 * @return true to defect
+		 */
+		boolean defects(int games, int self, int other);
+	}
+
+	/**
+	 * Most strategies there can be: ordinals are stored in a byte per agent.
+	 */
+	public static final int MAX_STRATEGIES = Byte.MAX_VALUE + 1;
+
+	private static final List<Strategy> REGISTERED = new ArrayList<>();
+	private static volatile Strategy[] registered = new Strategy[0];
+
+	public static final Strategy NAIVE_C = register("NAIVE_C", "nNaiveC", (d, self, other) -> StrategyTable.respond(Action.COOPERATE, false, false, true), true, 0, 1, 0);
+	public static final Strategy NAIVE_D = register("NAIVE_D", "nNaiveD", (d, self, other) -> StrategyTable.respond(Action.DEFECT, false, false, true), true, 1, 0, 0);
+	public static final Strategy WALKAWAY_C = register("WALKAWAY_C", "nWalkawayC", (d, self, other) -> StrategyTable.respond(Action.COOPERATE, false, true, true), true, 0, 0, 1);
+	public static final Strategy WALKAWAY_D = register("WALKAWAY_D", "nWalkawayD", (d, self, other) -> StrategyTable.respond(Action.DEFECT, false, true, true), true, 1, 0, 1);
+	public static final Strategy TFT_STATIONARY = register("TFT_STATIONARY", "nTFTStationary", (d, self, other) -> StrategyTable.respond(titForTat(other), false, false, false), false, .5, .5, .5);
+	public static final Strategy TFT_MOBILE = register("TFT_MOBILE", "nTFTMobile", (d, self, other) -> StrategyTable.respond(titForTat(other), false, false, true), true, 1, 1, 1);
+	public static final Strategy PAVLOV_STATIONARY = register("PAVLOV_STATIONARY", "nPAVLOVStationary", (d, self, other) -> StrategyTable.respond(pavlov(self, other), false, false, false), false, 1, 1, 0);
+	public static final Strategy PAVLOV_MOBILE = register("PAVLOV_MOBILE", "nPAVLOVMobile", (d, self, other) -> StrategyTable.respond(pavlov(self, other), false, false, true), true, 1, .5, 0);
+	public static final Strategy REALISTIC_TFT = register("REALISTIC_TFT", "nRealisticTFT", (d, self, other) -> StrategyTable.respond(titForTat(other), false, true, true), true, 1, .5, .5);
+	public static final Strategy RETREAT = register("RETREAT", "nRetreat", Strategy::retreat, true, 0, 1, 1);
+
+	private final String name;
+	private final String column;
+	private final int ordinal;
+	private final Rule rule;
+	private final int memory;
+	private final long[] defectMask;
+	private final int moves;
+	private final boolean movesWithoutPartner;
+	private final double red;
+	private final double green;
+	private final double blue;
+
+	private Strategy(String name, String column, int ordinal, Rule rule, int memory, long[] defectMask, int moves, boolean movesWithoutPartner, double red, double green, double blue) {
+		this.name = name;
+		this.column = column;
+		this.ordinal = ordinal;
+		this.rule = rule;
+		this.memory = memory;
+		this.defectMask = defectMask;
+		this.moves = moves;
+		this.movesWithoutPartner = movesWithoutPartner;
+		this.red = red;
+		this.green = green;
+		this.blue = blue;
+	}
+
+	/**
+	 * Register a new strategy, giving it the next ordinal and adding its responses to {@link StrategyTable}.
+	 * @param name unique name, as in {@link #valueOf(String)}
+	 * @param column name of the strategy's data column
+	 * @param rule response to the last game
+	 * @param movesWithoutPartner true if the strategy moves when no partner is found
+	 * @param red red component of the GUI color, in [0, 1]
+	 * @param green green component of the GUI color, in [0, 1]
+	 * @param blue blue component of the GUI color, in [0, 1]
+	 * @return the new strategy
+	 */
+	public static Strategy register(String name, String column, Rule rule, boolean movesWithoutPartner, double red, double green, double blue) {
+		return add(name, column, rule, 0, null, 0, movesWithoutPartner, red, green, blue);
+	}
+
+	/**
+	 * Register a new memory-n strategy, which looks back over its last <i>memory</i> games, giving it the next ordinal. Turns in which no partner was found are not games, so they are not remembered and do not
+	 * push earlier games out of the history.
+	 * @param name unique name, as in {@link #valueOf(String)}
+	 * @param column name of the strategy's data column
+	 * @param memory number of games to look back over, from 1 to {@link StrategyTable#MAX_MEMORY}
+	 * @param defectMask one bit for each history register value below 2<sup>2 memory + 1</sup>, 1 to defect (see {@link StrategyTable}); for instance from {@link #defectMask(int, HistoryRule)}
+	 * @param moveCooperate true to move if the partner cooperates
+	 * @param moveDefect true to move if the partner defects
+	 * @param moveNothing true to move if the partner does nothing
+	 * @param movesWithoutPartner true if the strategy moves when no partner is found
+	 * @param red red component of the GUI color, in [0, 1]
+	 * @param green green component of the GUI color, in [0, 1]
+	 * @param blue blue component of the GUI color, in [0, 1]
+	 * @return the new strategy
+	 */
+	public static Strategy registerMemory(String name, String column, int memory, long[] defectMask, boolean moveCooperate, boolean moveDefect, boolean moveNothing, boolean movesWithoutPartner, double red,
+			double green, double blue) {
+		if (memory < 1 || memory > StrategyTable.MAX_MEMORY) {
+			throw new RuntimeException("Strategies can look back over 1 to " + StrategyTable.MAX_MEMORY + " games, not " + memory);
+		}
+		if (defectMask.length != maskLength(memory)) {
+			throw new RuntimeException("A memory-" + memory + " strategy needs a mask of " + maskLength(memory) + " longs, not " + defectMask.length);
+		}
+		return add(name, column, null, memory, defectMask.clone(), StrategyTable.respond(Action.COOPERATE, moveCooperate, moveDefect, moveNothing), movesWithoutPartner, red, green, blue);
+	}
+
+	/**
+	 * Build the bitmask of a memory-n strategy from a rule, by asking it about every history the strategy can have.
+	 * @param memory number of games to look back over, from 1 to {@link StrategyTable#MAX_MEMORY}
+	 * @param rule whether to defect after each history
+	 * @return mask for {@link #registerMemory}
+	 */
+	public static long[] defectMask(int memory, HistoryRule rule) {
+		long[] mask = new long[maskLength(memory)];
+		for (int h = StrategyTable.EMPTY_HISTORY; h < 2 << (2 * memory); h++) {
+			int games = StrategyTable.games(h);
+			int self = 0;
+			int other = 0;
+			for (int g = 0; g < games; g++) {
+				self |= StrategyTable.action(h, g, false) << g;
+				other |= StrategyTable.action(h, g, true) << g;
+			}
+			if (rule.defects(games, self, other)) {
+				mask[h >>> 6] |= 1L << h;
+			}
+		}
+		return mask;
+	}
+
+	private static int maskLength(int memory) {
+		return Math.max(1, (2 << (2 * memory)) / 64);
+	}
+
+	private static synchronized Strategy add(String name, String column, Rule rule, int memory, long[] defectMask, int moves, boolean movesWithoutPartner, double red, double green, double blue) {
+		for (Strategy s : REGISTERED) {
+			if (s.name.equals(name) || s.column.equals(column)) {
+				throw new RuntimeException("A strategy named " + name + " or with data column " + column + " has already been registered");
+			}
+		}
+		if (REGISTERED.size() == MAX_STRATEGIES) {
+			throw new RuntimeException("No more than " + MAX_STRATEGIES + " strategies can be registered");
+		}
+		Strategy s = new Strategy(name, column, REGISTERED.size(), rule, memory, defectMask, moves, movesWithoutPartner, red, green, blue);
+		StrategyTable.add(s);
+		REGISTERED.add(s);
+		registered = REGISTERED.toArray(new Strategy[0]);
+		return s;
+	}
+
+	/**
+	 * Get every registered strategy, in ordinal order.
+	 * @return new array of the strategies
+	 */
+	public static Strategy[] values() {
+		return registered.clone();
+	}
+
+	/**
+	 * Get the number of registered strategies.
+	 * @return strategy count
+	 */
+	public static int count() {
+		return registered.length;
+	}
+
+	/**
+	 * Get a strategy from its ordinal.
+	 * @param ordinal strategy ordinal
+	 * @return the strategy
+	 */
+	public static Strategy forOrdinal(int ordinal) {
+		return registered[ordinal];
+	}
+
+	/**
+	 * Get a strategy from its name.
+	 * @param name strategy name
+	 * @return the strategy
+	 * @throws IllegalArgumentException if no strategy has that name
+	 */
+	public static Strategy valueOf(String name) {
+		for (Strategy s : registered) {
+			if (s.name.equals(name)) {
+				return s;
+			}
+		}
+		throw new IllegalArgumentException("No strategy named " + name);
+	}
+
+	/**
+	 * Get the names of the data columns, in ordinal order.
+	 * @return new array of column names
+	 */
+	public static String[] columns() {
+		Strategy[] strategies = registered;
+		String[] columns = new String[strategies.length];
+		for (int i = 0; i < strategies.length; i++) {
+			columns[i] = strategies[i].column;
+		}
+		return columns;
+	}
+
+	public int ordinal() {
+		return ordinal;
+	}
+
+	public String name() {
+		return name;
+	}
+
+	public String getColumn() {
+		return column;
+	}
+
+	/**
+	 * Get the strategy's rule. The rule is only called when the strategy is registered; during play its responses are read from {@link StrategyTable}.
+	 * @return the rule, or null for a memory-n strategy
+	 */
+	public Rule getRule() {
+		return rule;
+	}
+
+	/**
+	 * Get the number of games the strategy looks back over.
+	 * @return memory length, or 0 for a strategy of the last game only, which is given by its rule
+	 */
+	public int getMemory() {
+		return memory;
+	}
+
+	/**
+	 * Get the bitmask of a memory-n strategy.
+	 * @return copy of the mask, or null for a strategy of the last game only
+	 */
+	public long[] getDefectMask() {
+		return defectMask == null ? null : defectMask.clone();
+	}
+
+	/**
+	 * Get the movement options of a memory-n strategy, packed as a response that cooperates.
+	 * @return packed response, or 0 for a strategy of the last game only
+	 */
+	int getMoves() {
+		return moves;
+	}
+
+	public boolean movesWithoutPartner() {
+		return movesWithoutPartner;
+	}
+
+	public double getRed() {
+		return red;
+	}
+
+	public double getGreen() {
+		return green;
+	}
+
+	public double getBlue() {
+		return blue;
+	}
+
+	@Override
+	public String toString() {
+		return name;
+	}
+
+	/**
+	 * PAVLOV (win-stay, lose-shift): cooperate after mutual cooperation or mutual defection, otherwise defect. If there is a NOTHING in the history, cooperate.
+	 */
+	public static Action pavlov(Action self, Action other) {
+		if (self == Action.NOTHING || other == Action.NOTHING) {
+			return Action.COOPERATE;
+		}
+		return self == other ? Action.COOPERATE : Action.DEFECT;
+	}
+
+	/**
+	 * Tit-for-tat: copy the partner's last action, cooperating if there was none.
+	 */
+	public static Action titForTat(Action other) {
+		return other == Action.DEFECT ? Action.DEFECT : Action.COOPERATE;
+	}
+
+	/**
+	 * RETREAT: cooperate and walk away from defection until defected against, then defect and move on regardless, for good.
+	 */
+	private static int retreat(boolean defected, Action self, Action other) {
+		if (defected) {
+			return StrategyTable.respond(Action.DEFECT, true, true, true);
+		}
+		if (other == Action.DEFECT) {
+			return StrategyTable.markDefected(StrategyTable.respond(Action.DEFECT, false, true, true));
+		}
+		return StrategyTable.respond(Action.COOPERATE, false, true, true);
+	}
+
 }
@@ -0,0 +1,235 @@
+package agents;
+
+import java.util.Arrays;
+
+import agents.Agent.Action;
+
+/**
+ * Shared lookup tables for the game strategies. Every strategy's response to its memory of the last game is computed once, when the strategy is {@link Strategy#register registered}, and packed into an int, so
+ * selecting an action during play is a single array read with no allocation and no call into the strategy's rule, however many strategies there are.
+ * <p>
+ * Actions are represented by their {@link Action} ordinals. A response packs the chosen action in the low two bits, followed by one bit for each partner action after which the agent moves (in
+ * {@link Action} order), followed by a bit that marks the agent as having been defected against (as RETREAT does).
+ * <p>
+ * Memory-n strategies ({@link Strategy#registerMemory}) look further back, over a history of the agent's last <i>n</i> games kept in a bit shift register: a 1 marking its start, followed by two bits per game,
+ * oldest first, the agent's own action and then its partner's, each 1 for DEFECT. The empty history is {@link #EMPTY_HISTORY}; once <i>n</i> games are remembered the oldest drops off as each new one comes in,
+ * so the register is always below 2<sup>2n+1</sup>. Only games actually played are recorded: a turn without a partner leaves the history as it was, unlike the memory of the last game, which it sets to
+ * {@link Action#NOTHING}. Such a strategy is a bitmask with one bit for each value of the register, 1 to defect, and fixed movement options, so its response is again one array read.
+ * Every agent keeps this history, but it stays empty for strategies that do not use it.
+ */
+public final class StrategyTable {
+
+	public static final int COOPERATE = Action.COOPERATE.ordinal();
+	public static final int DEFECT = Action.DEFECT.ordinal();
+	public static final int NOTHING = Action.NOTHING.ordinal();
+
+	private static final Action[] ACTIONS = Action.values();
+	private static final int N_ACTIONS = ACTIONS.length;
+	private static final int ACTION_MASK = 3;
+	private static final int MOVE_SHIFT = 2;
+	private static final int DEFECTED_BIT = 1 << (MOVE_SHIFT + N_ACTIONS);
+	private static final int STRATEGY_ENTRIES = 2 * N_ACTIONS * N_ACTIONS;
+
+	/**
+	 * The longest history a memory-n strategy can look back over, in games, so that a history fits in a short.
+	 */
+	public static final int MAX_MEMORY = 6;
+	public static final int EMPTY_HISTORY = 1;
+
+	// replaced, never changed, when a strategy is registered, which happens before any simulation starts
+	private static int[] responses = new int[0];
+	private static boolean[] moveWithoutPartner = new boolean[0];
+	private static long[][] defectMasks = new long[0][];		// null for strategies of the last game only
+	private static int[] fullHistory = new int[0];		// marker bit of a full history: 1 << (2 * memory), so 1 for strategies of the last game only
+
+	static {
+		Strategy.count();		// registers the built-in strategies, if this class happens to be loaded first
+	}
+
+	private StrategyTable() {
+	}
+
+	/**
+	 * Look up a strategy's response given its memory of the last game.
+	 * @param strategy strategy ordinal
+	 * @param defected has this (RETREAT) agent been defected against before?
+	 * @param lastSelf action ordinal this agent played last game
+	 * @param lastOther action ordinal the partner played last game
+	 * @return packed response
+	 */
+	public static int response(int strategy, boolean defected, int lastSelf, int lastOther) {
+		return responses[index(strategy, defected, lastSelf, lastOther)];
+	}
+
+	/**
+	 * Look up a strategy's response given all it remembers: its last game, or, for a memory-n strategy, the history of its last games.
+	 * @param strategy strategy ordinal
+	 * @param defected has this (RETREAT) agent been defected against before?
+	 * @param lastSelf action ordinal this agent played last game
+	 * @param lastOther action ordinal the partner played last game
+	 * @param history history register
+	 * @return packed response
+	 */
+	public static int response(int strategy, boolean defected, int lastSelf, int lastOther, int history) {
+		long[] mask = defectMasks[strategy];
+		if (mask == null) {
+			return responses[index(strategy, defected, lastSelf, lastOther)];
+		}
+		return responses[index(strategy, false, NOTHING, NOTHING)] | (int)(mask[history >>> 6] >>> history) & 1;		// the movement options, with COOPERATE (0) or DEFECT (1)
+	}
+
+	/**
+	 * Add a game to a history register, dropping the oldest game if the strategy's memory is full. Histories of strategies that do not use them stay empty.
+	 * @param strategy strategy ordinal
+	 * @param history history register
+	 * @param self action ordinal this agent played, COOPERATE or DEFECT
+	 * @param other action ordinal the partner played, COOPERATE or DEFECT
+	 * @return the new history register
+	 */
+	public static int remember(int strategy, int history, int self, int other) {
+		int full = fullHistory[strategy];
+		int h = (history << 2) | (self << 1) | other;
+		return h < full << 1 ? h : (h & (full - 1)) | full;
+	}
+
+	/**
+	 * Get the number of games a strategy looks back over.
+	 * @param strategy strategy ordinal
+	 * @return memory length, or 0 for strategies of the last game only
+	 */
+	public static int memory(int strategy) {
+		return Integer.numberOfTrailingZeros(fullHistory[strategy]) / 2;
+	}
+
+	/**
+	 * Get the number of games held in a history register.
+	 * @param history history register
+	 * @return number of games
+	 */
+	public static int games(int history) {
+		return (31 - Integer.numberOfLeadingZeros(history)) / 2;
+	}
+
+	/**
+	 * Get one game from a history register.
+	 * @param history history register
+	 * @param back how many games back, 0 for the most recent
+	 * @param partner true for the partner's action, false for the agent's own
+	 * @return action ordinal, or NOTHING if the history does not go back that far
+	 */
+	public static int action(int history, int back, boolean partner) {
+		if (back >= games(history)) {
+			return NOTHING;
+		}
+		return (history >>> (2 * back + (partner ? 0 : 1))) & 1;
+	}
+
+	/**
+	 * Get the action ordinal from a packed response.
+	 * @param response packed response
+	 * @return action ordinal
+	 */
+	public static int action(int response) {
+		return response & ACTION_MASK;
+	}
+
+	/**
+	 * Does the agent move after its partner plays the given action?
+	 * @param response packed response
+	 * @param partnerAction partner's action ordinal
+	 * @return true if the agent should move
+	 */
+	public static boolean moves(int response, int partnerAction) {
+		return (response & (1 << (MOVE_SHIFT + partnerAction))) != 0;
+	}
+
+	/**
+	 * Does this response mark the agent as having been defected against?
+	 * @param response packed response
+	 * @return true if the agent's defected flag should be set
+	 */
+	public static boolean setsDefected(int response) {
+		return (response & DEFECTED_BIT) != 0;
+	}
+
+	/**
+	 * Does a strategy move when no partner is available?
+	 * @param strategy strategy ordinal
+	 * @return true if the agent should move
+	 */
+	public static boolean movesWithoutPartner(int strategy) {
+		return moveWithoutPartner[strategy];
+	}
+
+	/**
+	 * Convert an action ordinal back to an action.
+	 * @param action action ordinal
+	 * @return the action
+	 */
+	public static Action toAction(int action) {
+		return ACTIONS[action];
+	}
+
+	private static int index(int strategy, boolean defected, int lastSelf, int lastOther) {
+		return ((strategy * 2 + (defected ? 1 : 0)) * N_ACTIONS + lastSelf) * N_ACTIONS + lastOther;
+	}
+
+	/**
+	 * Make a response for a {@link Strategy.Rule}.
+	 * @param action action to play
+	 * @param moveCooperate true to move if the partner cooperates
+	 * @param moveDefect true to move if the partner defects
+	 * @param moveNothing true to move if the partner does nothing
+	 * @return packed response
+	 */
+	public static int respond(Action action, boolean moveCooperate, boolean moveDefect, boolean moveNothing) {
+		int r = action.ordinal();
+		if (moveCooperate) {
+			r |= 1 << (MOVE_SHIFT + COOPERATE);
+		}
+		if (moveDefect) {
+			r |= 1 << (MOVE_SHIFT + DEFECT);
+		}
+		if (moveNothing) {
+			r |= 1 << (MOVE_SHIFT + NOTHING);
+		}
+		return r;
+	}
+
+	/**
+	 * Mark a response as one after which the agent remembers having been defected against, so that from then on its rule is asked with <i>defected</i> true.
+	 * @param response packed response
+	 * @return the response, marked
+	 */
+	public static int markDefected(int response) {
+		return response | DEFECTED_BIT;
+	}
+
+	/**
+	 * Add the responses of a newly registered strategy, for every memory it can have, at the end of the tables. Called by {@link Strategy#register}, which holds the lock.
+	 * @param strategy the new strategy
+	 */
+	static void add(Strategy strategy) {
+		int s = strategy.ordinal();
+		int[] r = Arrays.copyOf(responses, (s + 1) * STRATEGY_ENTRIES);
+		for (int d = 0; d < 2; d++) {
+			for (int self = 0; self < N_ACTIONS; self++) {
+				for (int other = 0; other < N_ACTIONS; other++) {
+					r[index(s, d == 1, self, other)] = strategy.getMemory() > 0 ? strategy.getMoves() : strategy.getRule().respond(d == 1, ACTIONS[self], ACTIONS[other]);
+				}
+			}
+		}
+		boolean[] m = Arrays.copyOf(moveWithoutPartner, s + 1);
+		m[s] = strategy.movesWithoutPartner();
+		long[][] masks = Arrays.copyOf(defectMasks, s + 1);
+		masks[s] = strategy.getMemory() > 0 ? strategy.getDefectMask() : null;
+		int[] full = Arrays.copyOf(fullHistory, s + 1);
+		full[s] = 1 << (2 * strategy.getMemory());
+		responses = r;
+		moveWithoutPartner = m;
+		defectMasks = masks;
+		fullHistory = full;
+		return;
+	}
+
+}
@@ -0,0 +1,98 @@
+package agents;
+
+import simulation.PDWASim;
+import simulation.Termination;
+
+/**
+ * Decides from the observer's samples whether a run has reached a state it can not usefully leave: no agents, a single strategy, counts that have stayed flat for a while, or the end of its wall-clock budget.
+ * The criteria are read from the simulation's parameters when the run starts, and all but extinction are off by default.
+ * <p>
+ * Flat counts are judged over a sliding window of samples kept in a ring buffer: once the samples held span at least <i>steadyWindow</i> steps, the run is steady if no strategy's count ranges over more than
+ * <i>steadyTolerance</i> agents among them.
+ */
+public class TerminationCriteria {
+
+	private final boolean singleStrategy;
+	private final int tolerance;
+	private final long deadline;		// System.nanoTime() at which the budget runs out, or Long.MAX_VALUE for none
+	private final int[][] window;		// recent samples, oldest at head; null when steady state is not being detected
+	private int head;
+	private int held;
+
+	/**
+	 * Read the criteria from the simulation's parameters, starting the wall-clock budget now.
+	 * @param sim the simulation
+	 */
+	public TerminationCriteria(PDWASim sim) {
+		singleStrategy = sim.isStopOnSingleStrategy();
+		tolerance = sim.getSteadyTolerance();
+		deadline = sim.getMaxSeconds() > 0 ? System.nanoTime() + (long)(sim.getMaxSeconds() * 1e9) : Long.MAX_VALUE;
+		if (sim.getSteadyWindow() > 0) {
+			int interval = sim.getSampleInterval();
+			window = new int[(sim.getSteadyWindow() + interval - 1) / interval + 1][Strategy.count()];
+		} else {
+			window = null;
+		}
+	}
+
+	/**
+	 * Check a new sample against the criteria, in order of precedence.
+	 * @param counts count of each strategy, indexed by strategy ordinal
+	 * @param total total population
+	 * @return why the run should end, or null if it should carry on
+	 */
+	public Termination check(int[] counts, int total) {
+		if (total == 0) {
+			return Termination.EXTINCTION;
+		}
+		if (singleStrategy && isSingleStrategy(counts, total)) {
+			return Termination.SINGLE_STRATEGY;
+		}
+		if (window != null && isSteady(counts)) {
+			return Termination.STEADY_STATE;
+		}
+		if (deadline != Long.MAX_VALUE && System.nanoTime() - deadline >= 0) {
+			return Termination.TIME_BUDGET;
+		}
+		return null;
+	}
+
+	private static boolean isSingleStrategy(int[] counts, int total) {
+		for (int c : counts) {
+			if (c != 0) {
+				return c == total;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Add the sample to the window, then check whether the window is full and flat.
+	 */
+	private boolean isSteady(int[] counts) {
+		int k = window.length;
+		if (held == k) {		// overwrite the oldest
+			System.arraycopy(counts, 0, window[head], 0, counts.length);
+			head = (head + 1) % k;
+		} else {
+			System.arraycopy(counts, 0, window[(head + held) % k], 0, counts.length);
+			held++;
+		}
+		if (held < k) {
+			return false;
+		}
+		for (int s = 0; s < counts.length; s++) {
+			int min = counts[s];
+			int max = counts[s];
+			for (int[] sample : window) {
+				min = Math.min(min, sample[s]);
+				max = Math.max(max, sample[s]);
+			}
+			if (max - min > tolerance) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+}
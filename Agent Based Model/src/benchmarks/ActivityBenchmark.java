@@ -0,0 +1,79 @@
+package benchmarks;
+
+import java.util.Arrays;
+import java.util.Properties;
+
+import agents.Strategy;
+import output.NullSink;
+import simulation.PDWASim;
+import simulation.Parameters;
+
+/**
+ * Runs the agent engine on the same parameters and seeds with and without activity tracking, checks that every step's per-strategy counts and the final resource sums are exactly the same, and compares
+ * throughput. Activity tracking pays off when many stationary agents are isolated, so the defaults are a sparse population of stationary strategies.
+ * <p>
+ * Usage: <code>java benchmarks.ActivityBenchmark [-seeds n] [-steps n] [-parameterName value ...]</code>
+ */
+public class ActivityBenchmark {
+
+	private static final String USAGE = "java benchmarks.ActivityBenchmark [-seeds n] [-steps n] [-parameterName value ...]";
+
+	public static void main(String[] args) {
+		Properties params = new Properties();
+		params.setProperty("nNaiveC", "0");
+		params.setProperty("nNaiveD", "0");
+		params.setProperty("nWalkawayC", "0");
+		params.setProperty("nWalkawayD", "0");
+		params.setProperty("nTFTStationary", "2000");
+		params.setProperty("nPAVLOVStationary", "2000");
+		params.setProperty("nTFTMobile", "200");
+		params.setProperty("gridWidth", "400");
+		params.setProperty("gridHeight", "400");
+		Parameters.parseArgs(args, params, USAGE, "seeds", "steps");
+		int seeds = Integer.parseInt(Parameters.take(params, "seeds", "3"));
+		long steps = Long.parseLong(Parameters.take(params, "steps", "1000"));
+		System.out.println("seed\tsteps\tawake seconds\tactivity seconds\tspeedup\tidentical");
+		for (int seed = 1; seed <= seeds; seed++) {
+			PDWASim awake = make(seed, params, false);
+			PDWASim tracked = make(seed, params, true);
+			int n = Strategy.count();
+			int[] a = new int[n];
+			int[] b = new int[n];
+			long awakeNanos = 0;
+			long trackedNanos = 0;
+			boolean identical = true;
+			long done = 0;
+			for (; done < steps && identical; done++) {
+				long start = System.nanoTime();
+				boolean more = awake.schedule.step(awake);
+				awakeNanos += System.nanoTime() - start;
+				start = System.nanoTime();
+				boolean moreTracked = tracked.schedule.step(tracked);
+				trackedNanos += System.nanoTime() - start;
+				awake.acquirePopulation().getCounts(a);
+				tracked.acquirePopulation().getCounts(b);
+				identical = more == moreTracked && Arrays.equals(a, b);
+				if (!more) {
+					break;
+				}
+			}
+			for (int s = 0; s < n; s++) {
+				identical &= awake.acquirePopulation().getResources(s) == tracked.acquirePopulation().getResources(s);
+			}
+			awake.finish();
+			tracked.finish();
+			System.out.println(seed + "\t" + done + "\t" + awakeNanos / 1e9 + "\t" + trackedNanos / 1e9 + "\t" + (double)awakeNanos / trackedNanos + "\t" + identical);
+		}
+		return;
+	}
+
+	private static PDWASim make(long seed, Properties params, boolean activityTracking) {
+		PDWASim sim = new PDWASim(seed);
+		Parameters.apply(sim, params);
+		sim.setActivityTracking(activityTracking);
+		sim.attachSink(new NullSink());
+		sim.start();
+		return sim;
+	}
+
+}
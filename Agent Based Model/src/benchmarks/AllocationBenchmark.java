@@ -0,0 +1,99 @@
+package benchmarks;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.util.Properties;
+
+import agents.Strategy;
+import agents.StrategyTable;
+import output.NullSink;
+import simulation.PDWASim;
+import simulation.Parameters;
+
+/**
+ * Measures steady-state heap allocation and garbage collection activity per simulation step, and separately for the strategy lookup alone. Allocation is read from the HotSpot per-thread allocation counter, so
+ * this needs a HotSpot-based JVM.
+ * <p>
+ * Usage: <code>java benchmarks.AllocationBenchmark [-seed n] [-warmup n] [-steps n] [-parameterName value ...]</code>
+ */
+public class AllocationBenchmark {
+
+	private static final String USAGE = "java benchmarks.AllocationBenchmark [-seed n] [-warmup n] [-steps n] [-parameterName value ...]";
+
+	public static void main(String[] args) {
+		Properties params = new Properties();
+		Parameters.parseArgs(args, params, USAGE, "seed", "warmup", "steps");
+		long seed = Long.parseLong(Parameters.take(params, "seed", "1"));
+		long warmup = Long.parseLong(Parameters.take(params, "warmup", "2000"));
+		long steps = Long.parseLong(Parameters.take(params, "steps", "2000"));
+		PDWASim sim = new PDWASim(seed);
+		Parameters.apply(sim, params);
+		com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean)ManagementFactory.getThreadMXBean();
+		long thread = Thread.currentThread().getId();
+
+		sim.attachSink(new NullSink());
+		sim.start();
+		for (long i = 0; i < warmup && sim.schedule.step(sim); i++) {
+		}
+		long agentSteps = 0;
+		long gcCount = gcCount();
+		long gcMillis = gcMillis();
+		long bytes = threads.getThreadAllocatedBytes(thread);
+		long start = System.nanoTime();
+		long done = 0;
+		for (; done < steps; done++) {
+			agentSteps += sim.acquireSpace().allObjects.numObjs;
+			if (!sim.schedule.step(sim)) {
+				break;
+			}
+		}
+		long elapsed = System.nanoTime() - start;
+		bytes = threads.getThreadAllocatedBytes(thread) - bytes;
+		gcCount = gcCount() - gcCount;
+		gcMillis = gcMillis() - gcMillis;
+		sim.finish();
+		System.out.println("simulation: steps=" + done + "; agent-steps=" + agentSteps + "; bytes/step=" + ratio(bytes, done) + "; bytes/agent-step=" + ratio(bytes, agentSteps)
+				+ "; MB/sec=" + ratio(bytes * 1000 / (1 << 20), elapsed / 1000000) + "; gc=" + gcCount + " (" + gcMillis + " ms)");
+
+		// the strategy layer by itself: every lookup a game needs, over every strategy and history
+		int strategies = Strategy.count();
+		long lookups = 0;
+		int sink = 0;
+		for (int round = 0; round < 2; round++) {		// the first round warms up the JIT
+			bytes = threads.getThreadAllocatedBytes(thread);
+			lookups = 0;
+			for (int i = 0; i < 1000000; i++) {
+				int s = i % strategies;
+				int self = i % 3;
+				int other = (i / 3) % 3;
+				int r = StrategyTable.response(s, (i & 1) == 0, self, other);
+				sink += StrategyTable.action(r) + (StrategyTable.moves(r, other) ? 1 : 0) + (StrategyTable.setsDefected(r) ? 1 : 0);
+				lookups++;
+			}
+			bytes = threads.getThreadAllocatedBytes(thread) - bytes;
+		}
+		System.out.println("strategy lookups: lookups=" + lookups + "; bytes=" + bytes + "; bytes/lookup=" + ratio(bytes, lookups) + " (" + sink + ")");
+		return;
+	}
+
+	private static double ratio(long a, long b) {
+		return b == 0 ? 0 : (double)a / b;
+	}
+
+	private static long gcCount() {
+		long n = 0;
+		for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+			n += Math.max(0, gc.getCollectionCount());
+		}
+		return n;
+	}
+
+	private static long gcMillis() {
+		long n = 0;
+		for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+			n += Math.max(0, gc.getCollectionTime());
+		}
+		return n;
+	}
+
+}
@@ -0,0 +1,83 @@
+package benchmarks;
+
+import java.util.Properties;
+
+import agents.ClusterTracker;
+import output.NullSink;
+import simulation.Engine;
+import simulation.PDWASim;
+import simulation.Parameters;
+
+/**
+ * Runs each engine on the same parameters and seeds with and without cluster tracking, checks after every step that the incrementally tracked clusters agree exactly with a flood fill of the whole grid, and
+ * compares the time the tracking adds to a step with the time a flood fill takes. The two runs of a seed follow the same course, since tracking draws no random numbers.
+ * <p>
+ * Usage: <code>java benchmarks.ClusterBenchmark [-seeds n] [-steps n] [-engines AGENTS,ARRAYS,TILED] [-parameterName value ...]</code>
+ */
+public class ClusterBenchmark {
+
+	private static final String USAGE = "java benchmarks.ClusterBenchmark [-seeds n] [-steps n] [-engines AGENTS,ARRAYS,TILED] [-parameterName value ...]";
+
+	public static void main(String[] args) {
+		Properties params = new Properties();
+		params.setProperty("clusterGroups", "cooperators=NAIVE_C+WALKAWAY_C+TFT_STATIONARY+TFT_MOBILE+REALISTIC_TFT;defectors=NAIVE_D+WALKAWAY_D");
+		params.setProperty("nTFTStationary", "100");
+		params.setProperty("nTFTMobile", "100");
+		Parameters.parseArgs(args, params, USAGE, "seeds", "steps", "engines");
+		int seeds = Integer.parseInt(Parameters.take(params, "seeds", "3"));
+		long steps = Long.parseLong(Parameters.take(params, "steps", "500"));
+		String[] engines = Parameters.take(params, "engines", "AGENTS,ARRAYS,TILED").split(",");
+		params.setProperty("sampleInterval", "1");
+		System.out.println("engine\tseed\tsteps\tplain seconds\ttracked seconds\tflood fill seconds\tidentical");
+		for (String engine : engines) {
+			for (int seed = 1; seed <= seeds; seed++) {
+				PDWASim plain = make(seed, params, Engine.valueOf(engine.trim()), false);
+				PDWASim tracked = make(seed, params, Engine.valueOf(engine.trim()), true);
+				ClusterTracker clusters = tracked.acquireClusterTracker();
+				long plainNanos = 0;
+				long trackedNanos = 0;
+				long fillNanos = 0;
+				String problem = null;
+				long done = 0;
+				for (; done < steps && problem == null; done++) {
+					long start = System.nanoTime();
+					boolean more = plain.schedule.step(plain);
+					plainNanos += System.nanoTime() - start;
+					start = System.nanoTime();
+					tracked.schedule.step(tracked);
+					trackedNanos += System.nanoTime() - start;
+					start = System.nanoTime();
+					try {
+						clusters.verify();
+					} catch (RuntimeException e) {
+						problem = e.getMessage();
+					}
+					fillNanos += System.nanoTime() - start;
+					if (!more) {
+						break;
+					}
+				}
+				plain.finish();
+				tracked.finish();
+				System.out.println(engine + "\t" + seed + "\t" + done + "\t" + plainNanos / 1e9 + "\t" + trackedNanos / 1e9 + "\t" + fillNanos / 1e9 + "\t" + (problem == null));
+				if (problem != null) {
+					System.out.println(problem);
+				}
+			}
+		}
+		return;
+	}
+
+	private static PDWASim make(long seed, Properties params, Engine engine, boolean clusterTracking) {
+		PDWASim sim = new PDWASim(seed);
+		Parameters.apply(sim, params);
+		sim.setEngine(engine);
+		if (!clusterTracking) {
+			sim.setClusterGroups("");
+		}
+		sim.attachSink(new NullSink());
+		sim.start();
+		return sim;
+	}
+
+}
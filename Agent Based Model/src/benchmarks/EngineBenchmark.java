@@ -0,0 +1,190 @@
+package benchmarks;
+
+import java.util.Properties;
+
+import agents.Strategy;
+import output.NullSink;
+import simulation.Engine;
+import simulation.PDWASim;
+import simulation.Parameters;
+
+/**
+ * Compares the agent engine with the array engine on the same parameters and seeds: throughput, and the mean final count of each strategy over the seeds. The two engines apply the same rules but draw random
+ * numbers in a different order, so counts agree in distribution rather than run by run.
+ * <p>
+ * That agreement is checked: the final counts of each strategy under every engine are compared with those under the first by Welch's two-sample t-test over the seeds, and the benchmark fails (exiting
+ * with status 1) if any difference is significant at level <i>alpha</i>, Bonferroni-corrected for the number of comparisons. Strategies with no spread under either engine must agree exactly.
+ * <p>
+ * Usage: <code>java benchmarks.EngineBenchmark [-seeds n] [-steps n] [-engines AGENTS,ARRAYS] [-alpha p] [-parameterName value ...]</code>
+ */
+public class EngineBenchmark {
+
+	private static final String USAGE = "java benchmarks.EngineBenchmark [-seeds n] [-steps n] [-engines AGENTS,ARRAYS] [-alpha p] [-parameterName value ...]";
+
+	public static void main(String[] args) {
+		Properties params = new Properties();
+		Parameters.parseArgs(args, params, USAGE, "seeds", "steps", "engines", "alpha");
+		int seeds = Integer.parseInt(Parameters.take(params, "seeds", "20"));
+		long steps = Long.parseLong(Parameters.take(params, "steps", "1000"));
+		String[] engines = Parameters.take(params, "engines", "AGENTS,ARRAYS").split(",");
+		double alpha = Double.parseDouble(Parameters.take(params, "alpha", "0.01"));
+		int nStrategies = Strategy.count();
+		double[][][] finalCounts = new double[engines.length][nStrategies][seeds];		// by engine, strategy and seed
+		StringBuilder header = new StringBuilder("engine\tseeds\tsteps\tseconds\tsteps/sec\tagent-steps/sec");
+		for (Strategy s : Strategy.values()) {
+			header.append('\t').append(s);
+		}
+		System.out.println(header);
+		for (int e = 0; e < engines.length; e++) {
+			Engine engine = Engine.valueOf(engines[e].trim());
+			double[] meanCounts = new double[nStrategies];
+			long totalSteps = 0;
+			long agentSteps = 0;
+			long nanos = 0;
+			for (int seed = 1; seed <= seeds; seed++) {
+				PDWASim sim = new PDWASim(seed);
+				Parameters.apply(sim, params);
+				sim.setEngine(engine);
+				sim.attachSink(new NullSink());
+				sim.start();
+				long start = System.nanoTime();
+				long done = 0;
+				int[] counts = new int[nStrategies];
+				for (; done < steps; done++) {
+					if (!sim.schedule.step(sim)) {
+						break;
+					}
+					sim.acquirePopulation().getCounts(counts);
+					for (int c : counts) {
+						agentSteps += c;
+					}
+				}
+				nanos += System.nanoTime() - start;
+				totalSteps += done;
+				sim.finish();
+				for (int i = 0; i < nStrategies; i++) {
+					meanCounts[i] += (double)counts[i] / seeds;
+					finalCounts[e][i][seed - 1] = counts[i];
+				}
+			}
+			double seconds = nanos / 1e9;
+			StringBuilder row = new StringBuilder();
+			row.append(engine).append('\t').append(seeds).append('\t').append(totalSteps).append('\t').append(seconds).append('\t').append(totalSteps / seconds).append('\t').append(agentSteps / seconds);
+			for (double c : meanCounts) {
+				row.append('\t').append(c);
+			}
+			System.out.println(row);
+		}
+		if (!checkAgreement(engines, finalCounts, alpha)) {
+			System.exit(1);
+		}
+		return;
+	}
+
+	/**
+	 * Compare the final counts of every engine after the first with those of the first, strategy by strategy, printing a line for each significant difference.
+	 * @return true if the engines agree
+	 */
+	static boolean checkAgreement(String[] engines, double[][][] finalCounts, double alpha) {
+		int nStrategies = finalCounts[0].length;
+		double corrected = alpha / Math.max(1, (engines.length - 1) * nStrategies);
+		boolean agree = true;
+		for (int e = 1; e < engines.length; e++) {
+			for (int s = 0; s < nStrategies; s++) {
+				double[] a = finalCounts[0][s];
+				double[] b = finalCounts[e][s];
+				double p = welchP(a, b);
+				if (p < corrected) {
+					System.out.println(engines[e].trim() + " differs from " + engines[0].trim() + " in " + Strategy.forOrdinal(s) + ": means " + mean(a) + " and " + mean(b) + ", p = " + p + " (limit "
+							+ corrected + ")");
+					agree = false;
+				}
+			}
+		}
+		System.out.println(agree ? "engines agree at alpha = " + alpha : "engines differ");
+		return agree;
+	}
+
+	/**
+	 * Two-sided p-value of Welch's t-test for a difference in means.
+	 */
+	private static double welchP(double[] a, double[] b) {
+		double va = variance(a) / a.length;
+		double vb = variance(b) / b.length;
+		double diff = mean(a) - mean(b);
+		if (va + vb == 0) {
+			return diff == 0 ? 1 : 0;
+		}
+		double t = diff / Math.sqrt(va + vb);
+		double df = (va + vb) * (va + vb) / (va * va / (a.length - 1) + vb * vb / (b.length - 1));
+		return incompleteBeta(df / 2, 0.5, df / (df + t * t));
+	}
+
+	private static double mean(double[] x) {
+		double sum = 0;
+		for (double v : x) {
+			sum += v;
+		}
+		return sum / x.length;
+	}
+
+	private static double variance(double[] x) {
+		double m = mean(x);
+		double sum = 0;
+		for (double v : x) {
+			sum += (v - m) * (v - m);
+		}
+		return x.length > 1 ? sum / (x.length - 1) : 0;
+	}
+
+	/**
+	 * Regularized incomplete beta function I<sub>x</sub>(a, b), by its continued fraction (Lentz's method), which gives the tail of the t distribution.
+	 */
+	private static double incompleteBeta(double a, double b, double x) {
+		if (x <= 0) {
+			return 0;
+		}
+		if (x >= 1) {
+			return 1;
+		}
+		if (x > (a + 1) / (a + b + 2)) {
+			return 1 - incompleteBeta(b, a, 1 - x);
+		}
+		double front = Math.exp(logGamma(a + b) - logGamma(a) - logGamma(b) + a * Math.log(x) + b * Math.log(1 - x)) / a;
+		double tiny = 1e-300;
+		double c = 1;
+		double d = 1 - (a + b) * x / (a + 1);
+		d = 1 / (Math.abs(d) < tiny ? tiny : d);
+		double f = d;
+		for (int m = 1; m <= 300; m++) {
+			for (int half = 0; half < 2; half++) {
+				double num = half == 0 ? m * (b - m) * x / ((a + 2 * m - 1) * (a + 2 * m)) : -(a + m) * (a + b + m) * x / ((a + 2 * m) * (a + 2 * m + 1));
+				d = 1 + num * d;
+				d = 1 / (Math.abs(d) < tiny ? tiny : d);
+				c = 1 + num / c;
+				c = Math.abs(c) < tiny ? tiny : c;
+				f *= c * d;
+			}
+			if (Math.abs(c * d - 1) < 1e-12) {
+				break;
+			}
+		}
+		return front * f;
+	}
+
+	/**
+	 * Natural log of the gamma function, by the Lanczos approximation.
+	 */
+	private static double logGamma(double x) {
+		double[] g = { 76.18009172947146, -86.50532032941677, 24.01409824083091, -1.231739572450155, 0.1208650973866179e-2, -0.5395239384953e-5 };
+		double y = x;
+		double tmp = x + 5.5;
+		tmp -= (x + 0.5) * Math.log(tmp);
+		double ser = 1.000000000190015;
+		for (double c : g) {
+			ser += c / ++y;
+		}
+		return -tmp + Math.log(2.5066282746310005 * ser / x);
+	}
+
+}
@@ -0,0 +1,101 @@
+package benchmarks;
+
+import java.util.Arrays;
+import java.util.Properties;
+
+import agents.Strategy;
+import output.NullSink;
+import simulation.Engine;
+import simulation.PDWASim;
+import simulation.Parameters;
+
+/**
+ * Checks that the dense occupancy scans find the same partners as MASON's getMooreNeighbors at play radii up to and beyond the size of the grid, where a toroidal neighborhood wraps onto itself and each
+ * cell must still be visited once. For each radius and seed the agent engine is run on the sparse grid and on the dense occupancy index, which draw the same random numbers and so must give identical counts
+ * after every step; and the final counts of the array engine are compared with those of the sparse grid over the seeds by the t-test of {@link EngineBenchmark}. Exits with status 1 if anything differs.
+ * <p>
+ * The default radii are 1, half the grid, one less than the grid and more than the grid, on a small grid of unequal sides so both directions are clamped at different radii.
+ * <p>
+ * Usage: <code>java benchmarks.NeighborhoodBenchmark [-seeds n] [-steps n] [-radii r1,r2,...] [-alpha p] [-parameterName value ...]</code>
+ */
+public class NeighborhoodBenchmark {
+
+	private static final String USAGE = "java benchmarks.NeighborhoodBenchmark [-seeds n] [-steps n] [-radii r1,r2,...] [-alpha p] [-parameterName value ...]";
+
+	public static void main(String[] args) {
+		Properties params = new Properties();
+		params.setProperty("gridWidth", "60");
+		params.setProperty("gridHeight", "40");
+		Parameters.parseArgs(args, params, USAGE, "seeds", "steps", "radii", "alpha");
+		int seeds = Integer.parseInt(Parameters.take(params, "seeds", "10"));
+		long steps = Long.parseLong(Parameters.take(params, "steps", "200"));
+		int width = Integer.parseInt(params.getProperty("gridWidth"));
+		String radii = Parameters.take(params, "radii", "1," + width / 2 + "," + (width - 1) + "," + (width + width / 2));
+		double alpha = Double.parseDouble(Parameters.take(params, "alpha", "0.01"));
+		int nStrategies = Strategy.count();
+		boolean ok = true;
+		System.out.println("radius\tseed\tsteps\tsparse seconds\tdense seconds\tarrays seconds\tidentical");
+		for (String radius : radii.split(",")) {
+			params.setProperty("playRadius", radius.trim());
+			double[][][] finalCounts = new double[2][nStrategies][seeds];		// sparse agents and arrays, by strategy and seed
+			for (int seed = 1; seed <= seeds; seed++) {
+				PDWASim sparse = make(seed, params, Engine.AGENTS, false);
+				PDWASim dense = make(seed, params, Engine.AGENTS, true);
+				PDWASim arrays = make(seed, params, Engine.ARRAYS, true);
+				int[] a = new int[nStrategies];
+				int[] b = new int[nStrategies];
+				long[] nanos = new long[3];
+				boolean identical = true;
+				long done = 0;
+				for (; done < steps && identical; done++) {
+					long start = System.nanoTime();
+					boolean more = sparse.schedule.step(sparse);
+					nanos[0] += System.nanoTime() - start;
+					start = System.nanoTime();
+					boolean moreDense = dense.schedule.step(dense);
+					nanos[1] += System.nanoTime() - start;
+					sparse.acquirePopulation().getCounts(a);
+					dense.acquirePopulation().getCounts(b);
+					identical = more == moreDense && Arrays.equals(a, b);
+					if (!more) {
+						break;
+					}
+				}
+				for (int s = 0; s < nStrategies; s++) {
+					identical &= sparse.acquirePopulation().getResources(s) == dense.acquirePopulation().getResources(s);
+				}
+				long start = System.nanoTime();
+				for (long i = 0; i < steps && arrays.schedule.step(arrays); i++) {
+				}
+				nanos[2] += System.nanoTime() - start;
+				sparse.acquirePopulation().getCounts(a);
+				arrays.acquirePopulation().getCounts(b);
+				for (int s = 0; s < nStrategies; s++) {
+					finalCounts[0][s][seed - 1] = a[s];
+					finalCounts[1][s][seed - 1] = b[s];
+				}
+				sparse.finish();
+				dense.finish();
+				arrays.finish();
+				ok &= identical;
+				System.out.println(radius.trim() + "\t" + seed + "\t" + done + "\t" + nanos[0] / 1e9 + "\t" + nanos[1] / 1e9 + "\t" + nanos[2] / 1e9 + "\t" + identical);
+			}
+			ok &= EngineBenchmark.checkAgreement(new String[] { "AGENTS", "ARRAYS" }, finalCounts, alpha);
+		}
+		if (!ok) {
+			System.exit(1);
+		}
+		return;
+	}
+
+	private static PDWASim make(long seed, Properties params, Engine engine, boolean denseOccupancy) {
+		PDWASim sim = new PDWASim(seed);
+		Parameters.apply(sim, params);
+		sim.setEngine(engine);
+		sim.setDenseOccupancy(denseOccupancy);
+		sim.attachSink(new NullSink());
+		sim.start();
+		return sim;
+	}
+
+}
@@ -0,0 +1,68 @@
+package benchmarks;
+
+import java.util.Properties;
+
+import agents.Strategy;
+import output.NullSink;
+import simulation.Engine;
+import simulation.PDWASim;
+import simulation.Parameters;
+
+/**
+ * Measures how the tiled engine scales with the number of step threads, from 1 up to the given maximum, on the same seed and tile count. It also checks that every thread count produces exactly the same
+ * count history as the single-threaded run.
+ * <p>
+ * Usage: <code>java benchmarks.ScalingBenchmark [-seed n] [-steps n] [-maxThreads n] [-tiles n] [-parameterName value ...]</code>
+ */
+public class ScalingBenchmark {
+
+	private static final String USAGE = "java benchmarks.ScalingBenchmark [-seed n] [-steps n] [-maxThreads n] [-tiles n] [-parameterName value ...]";
+
+	public static void main(String[] args) {
+		Properties params = new Properties();
+		params.setProperty("gridWidth", "1000");
+		params.setProperty("gridHeight", "1000");
+		params.setProperty("nNaiveC", "50000");
+		params.setProperty("nNaiveD", "50000");
+		params.setProperty("nWalkawayC", "50000");
+		params.setProperty("nWalkawayD", "50000");
+		Parameters.parseArgs(args, params, USAGE, "seed", "steps", "maxThreads");
+		long seed = Long.parseLong(Parameters.take(params, "seed", "1"));
+		long steps = Long.parseLong(Parameters.take(params, "steps", "200"));
+		int maxThreads = Integer.parseInt(Parameters.take(params, "maxThreads", Integer.toString(Runtime.getRuntime().availableProcessors())));
+		System.out.println("threads\tsteps\tseconds\tsteps/sec\tspeedup\tidentical");
+		double baseline = 0;
+		long baselineHash = 0;
+		for (int threads = 1; threads <= maxThreads; threads++) {
+			PDWASim sim = new PDWASim(seed);
+			Parameters.apply(sim, params);
+			sim.setEngine(Engine.TILED);
+			sim.setStepThreads(threads);
+			sim.attachSink(new NullSink());
+			sim.start();
+			int[] counts = new int[Strategy.count()];
+			long hash = 17;
+			long start = System.nanoTime();
+			long done = 0;
+			for (; done < steps; done++) {
+				if (!sim.schedule.step(sim)) {
+					break;
+				}
+				sim.acquirePopulation().getCounts(counts);
+				for (int c : counts) {
+					hash = hash * 31 + c;
+				}
+			}
+			double seconds = (System.nanoTime() - start) / 1e9;
+			sim.finish();
+			double rate = done / seconds;
+			if (threads == 1) {
+				baseline = rate;
+				baselineHash = hash;
+			}
+			System.out.println(threads + "\t" + done + "\t" + seconds + "\t" + rate + "\t" + (rate / baseline) + "\t" + (hash == baselineHash));
+		}
+		return;
+	}
+
+}
@@ -0,0 +1,190 @@
+package output;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Properties;
+
+import simulation.Termination;
+
+/**
+ * Reads a file written by {@link BinaryColumnSink}, of the current version or version 1. The file is memory-mapped and decoded straight into primitive column arrays.
+ */
+public class BinaryColumnReader {
+
+	private final long seed;
+	private final byte encoding;
+	private final Properties params = new Properties();
+	private final String[] columns;
+	private long[] steps;
+	private int[][] values;
+	private int size;
+	private Termination termination;
+	private long stepsTaken = -1;
+
+	/**
+	 * Load a file.
+	 * @param path file to read
+	 */
+	public BinaryColumnReader(String path) {
+		MappedByteBuffer b;
+		try (FileChannel channel = FileChannel.open(Paths.get(path), StandardOpenOption.READ)) {
+			b = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+		} catch (IOException e) {
+			throw new RuntimeException("Unable to read data file: " + path, e);
+		}
+		b.order(ByteOrder.LITTLE_ENDIAN);
+		if (b.getInt() != BinaryColumnSink.MAGIC) {
+			throw new RuntimeException("Not a binary column file: " + path);
+		}
+		int version = b.getInt();
+		if (version != BinaryColumnSink.VERSION && version != 1) {
+			throw new RuntimeException("Unsupported binary column file version " + version + ": " + path);
+		}
+		encoding = b.get();
+		seed = b.getLong();
+		byte[] paramText = new byte[b.getInt()];
+		b.get(paramText);
+		try {
+			params.load(new StringReader(new String(paramText, StandardCharsets.UTF_8)));
+		} catch (IOException e) {
+			throw new RuntimeException("Unable to read parameters: " + path, e);
+		}
+		columns = new String[b.getInt()];
+		for (int c = 0; c < columns.length; c++) {
+			byte[] name = new byte[b.getInt()];
+			b.get(name);
+			columns[c] = new String(name, StandardCharsets.UTF_8);
+		}
+		steps = new long[BinaryColumnSink.BLOCK_ROWS];
+		values = new int[columns.length][BinaryColumnSink.BLOCK_ROWS];
+		while (b.remaining() >= 8) {
+			if (b.getInt(b.position()) == BinaryColumnSink.TRAILER) {
+				readTrailer(b);
+				break;
+			}
+			readBlock(b);
+		}
+	}
+
+	private void readBlock(MappedByteBuffer b) {
+		int rows = b.getInt();
+		b.getInt();		// block length, only needed to skip blocks
+		if (size + rows > steps.length) {
+			int capacity = Math.max(steps.length * 2, size + rows);
+			steps = Arrays.copyOf(steps, capacity);
+			for (int c = 0; c < values.length; c++) {
+				values[c] = Arrays.copyOf(values[c], capacity);
+			}
+		}
+		if (encoding == BinaryColumnSink.FIXED) {
+			for (int i = 0; i < rows; i++) {
+				steps[size + i] = b.getLong();
+			}
+			for (int[] column : values) {
+				for (int i = 0; i < rows; i++) {
+					column[size + i] = b.getInt();
+				}
+			}
+		} else {
+			long last = 0;
+			for (int i = 0; i < rows; i++) {
+				last += BinaryColumnSink.getVarLong(b);
+				steps[size + i] = last;
+			}
+			for (int[] column : values) {
+				long prev = 0;
+				for (int i = 0; i < rows; i++) {
+					prev += BinaryColumnSink.getVarLong(b);
+					column[size + i] = (int)prev;
+				}
+			}
+		}
+		size += rows;
+		return;
+	}
+
+	private void readTrailer(MappedByteBuffer b) {
+		b.getInt();
+		stepsTaken = b.getLong();
+		byte[] name = new byte[b.getInt()];
+		b.get(name);
+		termination = name.length == 0 ? null : Termination.valueOf(new String(name, StandardCharsets.UTF_8));
+		return;
+	}
+
+	/**
+	 * Send every row to a sink, opening and closing it with the run's termination.
+	 * @param sink destination
+	 */
+	public void replay(MetricsSink sink) {
+		sink.open(columns);
+		int[] row = new int[columns.length];
+		for (int i = 0; i < size; i++) {
+			for (int c = 0; c < columns.length; c++) {
+				row[c] = values[c][i];
+			}
+			sink.record(steps[i], row);
+		}
+		sink.close(termination, stepsTaken);
+		return;
+	}
+
+	public long getSeed() {
+		return seed;
+	}
+
+	public Properties getParameters() {
+		Properties p = new Properties();
+		p.putAll(params);
+		return p;
+	}
+
+	/**
+	 * Get why the run ended.
+	 * @return the reason, or null if the file does not record it (version 1, or not known when it was written)
+	 */
+	public Termination getTermination() {
+		return termination;
+	}
+
+	/**
+	 * Get the number of steps the run took.
+	 * @return steps, or -1 if the file does not record it
+	 */
+	public long getStepsTaken() {
+		return stepsTaken;
+	}
+
+	public String[] getColumns() {
+		return columns.clone();
+	}
+
+	/**
+	 * Number of rows in the file.
+	 * @return row count
+	 */
+	public int size() {
+		return size;
+	}
+
+	public long[] getSteps() {
+		return Arrays.copyOf(steps, size);
+	}
+
+	/**
+	 * Get one value column.
+	 * @param column column index
+	 * @return copy of the column
+	 */
+	public int[] getColumn(int column) {
+		return Arrays.copyOf(values[column], size);
+	}
+
+}
@@ -0,0 +1,225 @@
+package output;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Properties;
+
+import simulation.Termination;
+
+/**
+ * Sink that writes a compact binary columnar file, read back by {@link BinaryColumnReader}.
+ * <p>
+ * The file starts with a header: the magic bytes <i>PDWC</i>, a format version, the encoding, the random seed, the full parameter set (as properties text) and the column names. Rows follow in blocks of up to
+ * {@link #BLOCK_ROWS}; each block holds its row count and byte length, then the step column, then each value column in turn. With {@link #FIXED} encoding steps are 8-byte and values 4-byte little-endian
+ * integers. With {@link #DELTA} encoding each column in a block is stored as the first value followed by differences from the previous row, zigzag-encoded as variable-length integers, so slowly changing counts
+ * take a byte or two per value.
+ * <p>
+ * The file ends with a trailer in place of a block: a row count of {@link #TRAILER}, the number of steps the run took as an 8-byte integer, and the name of its {@link Termination} (empty if not known).
+ * Version 1 files, written before the trailer was added, end after the last block.
+ */
+public class BinaryColumnSink implements MetricsSink {
+
+	public static final int MAGIC = 0x43574450;		// "PDWC" read little-endian
+	public static final int VERSION = 2;
+	public static final byte FIXED = 0;
+	public static final byte DELTA = 1;
+	public static final int BLOCK_ROWS = 4096;
+	public static final int TRAILER = -1;		// row count marking the trailer
+
+	private final String path;
+	private final long seed;
+	private final Properties params;
+	private final byte encoding;
+	private FileChannel channel;
+	private ByteBuffer buffer;
+	private long[] steps;
+	private int[][] values;
+	private int rows;
+
+	/**
+	 * Make a sink writing to the given file.
+	 * @param path file to write
+	 * @param seed random seed of the run, recorded in the header
+	 * @param params parameter set of the run, recorded in the header
+	 * @param encoding {@link #FIXED} or {@link #DELTA}
+	 */
+	public BinaryColumnSink(String path, long seed, Properties params, byte encoding) {
+		if (encoding != FIXED && encoding != DELTA) {
+			throw new RuntimeException("Unknown column encoding: " + encoding);
+		}
+		this.path = path;
+		this.seed = seed;
+		this.params = params;
+		this.encoding = encoding;
+	}
+
+	@Override
+	public void open(String[] columns) {
+		try {
+			channel = FileChannel.open(Paths.get(path), StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+		} catch (IOException e) {
+			throw new RuntimeException("Unable to open data file: " + path, e);
+		}
+		steps = new long[BLOCK_ROWS];
+		values = new int[columns.length][BLOCK_ROWS];
+		rows = 0;
+		// the largest block is every value as a 5-byte varint and every step as a 10-byte one
+		buffer = ByteBuffer.allocateDirect(8 + BLOCK_ROWS * (10 + 5 * columns.length)).order(ByteOrder.LITTLE_ENDIAN);
+		byte[] paramText = paramText();
+		ByteBuffer header = ByteBuffer.allocate(64 + paramText.length + 4 * columns.length + totalLength(columns)).order(ByteOrder.LITTLE_ENDIAN);
+		header.putInt(MAGIC);
+		header.putInt(VERSION);
+		header.put(encoding);
+		header.putLong(seed);
+		header.putInt(paramText.length);
+		header.put(paramText);
+		header.putInt(columns.length);
+		for (String c : columns) {
+			byte[] name = c.getBytes(StandardCharsets.UTF_8);
+			header.putInt(name.length);
+			header.put(name);
+		}
+		header.flip();
+		write(header);
+		return;
+	}
+
+	@Override
+	public void record(long step, int[] row) {
+		steps[rows] = step;
+		for (int c = 0; c < values.length; c++) {
+			values[c][rows] = row[c];
+		}
+		if (++rows == BLOCK_ROWS) {
+			flushBlock();
+		}
+		return;
+	}
+
+	@Override
+	public void close(Termination reason, long steps) {
+		if (channel == null) {
+			return;
+		}
+		flushBlock();
+		byte[] name = reason == null ? new byte[0] : reason.name().getBytes(StandardCharsets.UTF_8);
+		ByteBuffer trailer = ByteBuffer.allocate(16 + name.length).order(ByteOrder.LITTLE_ENDIAN);
+		trailer.putInt(TRAILER);
+		trailer.putLong(steps);
+		trailer.putInt(name.length);
+		trailer.put(name);
+		trailer.flip();
+		write(trailer);
+		try {
+			channel.close();
+		} catch (IOException e) {
+			throw new RuntimeException("Unable to close data file: " + path, e);
+		}
+		channel = null;
+		return;
+	}
+
+	private void flushBlock() {
+		if (rows == 0) {
+			return;
+		}
+		buffer.clear();
+		buffer.putInt(rows);
+		buffer.putInt(0);		// block length, filled in below
+		if (encoding == FIXED) {
+			for (int i = 0; i < rows; i++) {
+				buffer.putLong(steps[i]);
+			}
+			for (int[] column : values) {
+				for (int i = 0; i < rows; i++) {
+					buffer.putInt(column[i]);
+				}
+			}
+		} else {
+			long last = 0;
+			for (int i = 0; i < rows; i++) {
+				putVarLong(buffer, steps[i] - last);
+				last = steps[i];
+			}
+			for (int[] column : values) {
+				int prev = 0;
+				for (int i = 0; i < rows; i++) {
+					putVarLong(buffer, (long)column[i] - prev);
+					prev = column[i];
+				}
+			}
+		}
+		buffer.putInt(4, buffer.position() - 8);
+		buffer.flip();
+		write(buffer);
+		rows = 0;
+		return;
+	}
+
+	private void write(ByteBuffer b) {
+		try {
+			while (b.hasRemaining()) {
+				channel.write(b);
+			}
+		} catch (IOException e) {
+			throw new RuntimeException("Unable to write data file: " + path, e);
+		}
+		return;
+	}
+
+	private byte[] paramText() {
+		if (params == null) {
+			return new byte[0];
+		}
+		StringWriter w = new StringWriter();
+		try {
+			params.store(w, null);
+		} catch (IOException e) {
+			throw new RuntimeException("Unable to record parameters", e);
+		}
+		return w.toString().getBytes(StandardCharsets.UTF_8);
+	}
+
+	private static int totalLength(String[] columns) {
+		int n = 0;
+		for (String c : columns) {
+			n += c.getBytes(StandardCharsets.UTF_8).length;
+		}
+		return n;
+	}
+
+	/**
+	 * Write a signed value as a zigzag-encoded variable-length integer: seven bits per byte, low bits first, high bit set on all but the last byte.
+	 */
+	static void putVarLong(ByteBuffer b, long v) {
+		long z = (v << 1) ^ (v >> 63);
+		while ((z & ~0x7FL) != 0) {
+			b.put((byte)((z & 0x7F) | 0x80));
+			z >>>= 7;
+		}
+		b.put((byte)z);
+		return;
+	}
+
+	/**
+	 * Read a value written by {@link #putVarLong(ByteBuffer, long)}.
+	 */
+	static long getVarLong(ByteBuffer b) {
+		long z = 0;
+		int shift = 0;
+		byte in;
+		do {
+			in = b.get();
+			z |= (long)(in & 0x7F) << shift;
+			shift += 7;
+		} while (in < 0);
+		return (z >>> 1) ^ -(z & 1);
+	}
+
+}
@@ -0,0 +1,21 @@
+package output;
+
+/**
+ * Converts a binary column file back to the observer's text layout: tab-separated, or comma-separated if the output name ends in <i>.csv</i>. The seed, parameters and how the run ended are printed to standard error.
+ * <p>
+ * Usage: <code>java output.BinaryToText input.pdwc [output.tsv]</code> (standard out if no output is given)
+ */
+public class BinaryToText {
+
+	public static void main(String[] args) {
+		if (args.length < 1 || args.length > 2) {
+			System.err.println("Usage: java output.BinaryToText input.pdwc [output.tsv]");
+			System.exit(1);
+		}
+		BinaryColumnReader reader = new BinaryColumnReader(args[0]);
+		System.err.println("seed=" + reader.getSeed() + "; rows=" + reader.size() + "; steps=" + reader.getStepsTaken() + "; termination=" + reader.getTermination() + "; parameters=" + reader.getParameters());
+		reader.replay(args.length == 2 ? TextSink.file(args[1]) : TextSink.stdout());
+		return;
+	}
+
+}
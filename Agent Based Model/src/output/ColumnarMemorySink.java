@@ -0,0 +1,111 @@
+package output;
+
+import java.util.Arrays;
+
+import simulation.Termination;
+
+/**
+ * Sink that keeps every row in memory, one primitive array per column, for analysis in the same JVM (for instance by a parameter sweep) without going through text.
+ */
+public class ColumnarMemorySink implements MetricsSink {
+
+	private String[] columns = new String[0];
+	private long[] steps = new long[256];
+	private int[][] values = new int[0][];
+	private int size;
+	private Termination termination;
+	private long stepsTaken = -1;
+
+	@Override
+	public void open(String[] columns) {
+		this.columns = columns.clone();
+		values = new int[columns.length][steps.length];
+		size = 0;
+		termination = null;
+		stepsTaken = -1;
+		return;
+	}
+
+	@Override
+	public void record(long step, int[] row) {
+		if (size == steps.length) {
+			steps = Arrays.copyOf(steps, size * 2);
+			for (int c = 0; c < values.length; c++) {
+				values[c] = Arrays.copyOf(values[c], size * 2);
+			}
+		}
+		steps[size] = step;
+		for (int c = 0; c < values.length; c++) {
+			values[c][size] = row[c];
+		}
+		size++;
+		return;
+	}
+
+	@Override
+	public void close(Termination reason, long steps) {
+		termination = reason;
+		stepsTaken = steps;
+		return;
+	}
+
+	/**
+	 * Number of rows recorded.
+	 * @return row count
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Get why the run ended.
+	 * @return the reason given when the sink was closed, or null if it is still open or none was given
+	 */
+	public Termination getTermination() {
+		return termination;
+	}
+
+	/**
+	 * Get the number of steps the run took.
+	 * @return steps given when the sink was closed, or -1 if it is still open
+	 */
+	public long getStepsTaken() {
+		return stepsTaken;
+	}
+
+	public String[] getColumns() {
+		return columns.clone();
+	}
+
+	/**
+	 * Get the step of every row.
+	 * @return copy of the step column
+	 */
+	public long[] getSteps() {
+		return Arrays.copyOf(steps, size);
+	}
+
+	/**
+	 * Get one value column.
+	 * @param column column index, in the order given to {@link #open(String[])}
+	 * @return copy of the column
+	 */
+	public int[] getColumn(int column) {
+		return Arrays.copyOf(values[column], size);
+	}
+
+	/**
+	 * Get one value column by name.
+	 * @param name column name
+	 * @return copy of the column
+	 */
+	public int[] getColumn(String name) {
+		for (int c = 0; c < columns.length; c++) {
+			if (columns[c].equals(name)) {
+				return getColumn(c);
+			}
+		}
+		throw new RuntimeException("No such column: " + name);
+	}
+
+}
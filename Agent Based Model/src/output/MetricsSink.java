@@ -0,0 +1,31 @@
+package output;
+
+import simulation.Termination;
+
+/**
+ * Destination for the observer's per-step data. A sink is opened once with the column names, receives one row per sampled step, and is closed when the simulation finishes with why and after how many steps
+ * the run ended, which every sink that writes a file records so that a run that died out can be told from one that was cut short.
+ */
+public interface MetricsSink {
+
+	/**
+	 * Start a new data set.
+	 * @param columns names of the value columns, not including the step
+	 */
+	void open(String[] columns);
+
+	/**
+	 * Record one row of data. The array may be reused by the caller after this returns, so sinks must copy anything they keep.
+	 * @param step simulation step
+	 * @param values one value per column
+	 */
+	void record(long step, int[] values);
+
+	/**
+	 * Finish the data set, flushing anything buffered and releasing any resources.
+	 * @param reason why the run ended, or null if that is not known (as when replaying a file written before it was recorded)
+	 * @param steps number of steps the run took
+	 */
+	void close(Termination reason, long steps);
+
+}
@@ -0,0 +1,22 @@
+package output;
+
+import simulation.Termination;
+
+/**
+ * Sink that discards everything, for runs where only the final state matters.
+ */
+public class NullSink implements MetricsSink {
+
+	@Override
+	public void open(String[] columns) {
+	}
+
+	@Override
+	public void record(long step, int[] values) {
+	}
+
+	@Override
+	public void close(Termination reason, long steps) {
+	}
+
+}
@@ -0,0 +1,125 @@
+package output;
+
+import java.io.BufferedWriter;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+
+import simulation.Termination;
+
+/**
+ * Sink that writes delimited text: a header line starting with <i>step</i>, then one line per row, and finally a comment line such as <code># steps=412; termination=EXTINCTION</code> saying how the run ended
+ * (tools that read delimited text can skip it as a comment, for instance R's read.table by default, or pandas with <code>comment='#'</code>). File output is buffered and only flushed when the sink is closed
+ * (or the buffer fills), so there is no per-line file I/O; output to standard out is flushed after every line, so the console shows each row as it is sampled, as it always has.
+ */
+public class TextSink implements MetricsSink {
+
+	private static final int BUFFER_SIZE = 1 << 16;
+
+	private final Writer out;
+	private final char delimiter;
+	private final boolean closeStream;
+	private final boolean flushEachLine;
+	private final StringBuilder line = new StringBuilder();
+
+	/**
+	 * Make a sink writing to the given stream.
+	 * @param out stream to write to
+	 * @param delimiter column delimiter
+	 * @param closeStream should the stream be closed along with the sink? (false for standard out)
+	 */
+	public TextSink(OutputStream out, char delimiter, boolean closeStream) {
+		this(out, delimiter, closeStream, false);
+	}
+
+	/**
+	 * Make a sink writing to the given stream, optionally flushing every line.
+	 * @param out stream to write to
+	 * @param delimiter column delimiter
+	 * @param closeStream should the stream be closed along with the sink? (false for standard out)
+	 * @param flushEachLine should each line be written out as soon as it is complete? (true for a console someone may be watching)
+	 */
+	public TextSink(OutputStream out, char delimiter, boolean closeStream, boolean flushEachLine) {
+		this.out = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8), BUFFER_SIZE);
+		this.delimiter = delimiter;
+		this.closeStream = closeStream;
+		this.flushEachLine = flushEachLine;
+	}
+
+	/**
+	 * Tab-separated output on standard out, the format the observer has always printed, flushed line by line so runs show their progress.
+	 * @return new sink
+	 */
+	public static TextSink stdout() {
+		return new TextSink(System.out, '\t', false, true);
+	}
+
+	/**
+	 * Buffered output to a file: comma-separated if the name ends in <i>.csv</i>, otherwise tab-separated.
+	 * @param path file to write
+	 * @return new sink
+	 */
+	public static TextSink file(String path) {
+		try {
+			return new TextSink(new FileOutputStream(path), path.toLowerCase().endsWith(".csv") ? ',' : '\t', true);
+		} catch (IOException e) {
+			throw new RuntimeException("Unable to open data file: " + path, e);
+		}
+	}
+
+	@Override
+	public void open(String[] columns) {
+		line.setLength(0);
+		line.append("step");
+		for (String c : columns) {
+			line.append(delimiter).append(c);
+		}
+		writeLine();
+		return;
+	}
+
+	@Override
+	public void record(long step, int[] values) {
+		line.setLength(0);
+		line.append(step);
+		for (int v : values) {
+			line.append(delimiter).append(v);
+		}
+		writeLine();
+		return;
+	}
+
+	@Override
+	public void close(Termination reason, long steps) {
+		line.setLength(0);
+		line.append("# steps=").append(steps).append("; termination=").append(reason == null ? "unknown" : reason.toString());
+		writeLine();
+		try {
+			if (closeStream) {
+				out.close();
+			} else {
+				out.flush();
+			}
+		} catch (IOException e) {
+			throw new RuntimeException("Unable to write data", e);
+		}
+		return;
+	}
+
+	private void writeLine() {
+		line.append('\n');
+		try {
+			out.append(line);
+			if (flushEachLine) {
+				out.flush();
+			}
+		} catch (IOException e) {
+			throw new RuntimeException("Unable to write data", e);
+		}
+		return;
+	}
+
+}
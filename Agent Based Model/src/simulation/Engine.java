@@ -0,0 +1,11 @@
+package simulation;
+
+/**
+ * How the simulation represents and steps its agents.
+ */
+public enum Engine {
+	AGENTS,		// one Agent object per individual, stored in the SparseGrid2D (works with the GUI)
+	ARRAYS,		// agent state in primitive arrays with a dense occupancy grid, stepped by a single Steppable (headless only)
+	TILED,		// as ARRAYS, but the grid is split into tiles that are stepped on several threads (headless only)
+	MIXED		// as ARRAYS, but well mixed: no grid, locations or movement, agents are paired at random every step and the grid size is ignored (headless only)
+}
@@ -0,0 +1,108 @@
+package simulation;
+
+/**
+ * Histogram of durations with logarithmic buckets: each power of two is split into {@link #SUB_BUCKETS} equal buckets, so any value is placed to within about 6% (and values below
+ * {@link #SUB_BUCKETS} exactly) using a fixed array of counts. Recording a value is a few arithmetic operations and an array increment, with no allocation, so it can be done every step.
+ */
+public class LatencyHistogram {
+
+	private static final int SUB_BITS = 4;
+	public static final int SUB_BUCKETS = 1 << SUB_BITS;
+
+	private final long[] counts = new long[(64 - SUB_BITS + 1) * SUB_BUCKETS];
+	private long count;
+	private long sum;
+	private long min = Long.MAX_VALUE;
+	private long max;
+
+	/**
+	 * Record one duration.
+	 * @param nanos duration in nanoseconds; negative values are counted as 0
+	 */
+	public void record(long nanos) {
+		long v = Math.max(0, nanos);
+		counts[bucket(v)]++;
+		count++;
+		sum += v;
+		min = Math.min(min, v);
+		max = Math.max(max, v);
+		return;
+	}
+
+	public long getCount() {
+		return count;
+	}
+
+	/**
+	 * Get the largest duration recorded, exactly.
+	 * @return nanoseconds, or 0 if none were recorded
+	 */
+	public long getMax() {
+		return max;
+	}
+
+	/**
+	 * Get the smallest duration recorded, exactly.
+	 * @return nanoseconds, or 0 if none were recorded
+	 */
+	public long getMin() {
+		return count == 0 ? 0 : min;
+	}
+
+	/**
+	 * Get the mean duration, exactly.
+	 * @return nanoseconds, or 0 if none were recorded
+	 */
+	public double getMean() {
+		return count == 0 ? 0 : (double)sum / count;
+	}
+
+	/**
+	 * Get a percentile: the middle of the bucket holding the value at that rank, kept within the recorded minimum and maximum.
+	 * @param percentile in [0, 100]
+	 * @return nanoseconds, or 0 if none were recorded
+	 */
+	public long getPercentile(double percentile) {
+		if (count == 0) {
+			return 0;
+		}
+		long rank = Math.max(1, (long)Math.ceil(percentile / 100 * count));
+		long seen = 0;
+		for (int b = 0; b < counts.length; b++) {
+			seen += counts[b];
+			if (seen >= rank) {
+				long low = lowest(b);
+				long mid = low + (lowest(b + 1) - low - 1) / 2;
+				return Math.min(max, Math.max(min, mid));
+			}
+		}
+		return max;
+	}
+
+	/**
+	 * Bucket of a value: values below {@link #SUB_BUCKETS} have a bucket each; above that, the bucket is given by the position of the highest set bit and the next {@link #SUB_BITS} bits.
+	 */
+	static int bucket(long v) {
+		if (v < SUB_BUCKETS) {
+			return (int)v;
+		}
+		int e = 63 - Long.numberOfLeadingZeros(v);
+		return (e - SUB_BITS + 1) * SUB_BUCKETS + (int)((v >>> (e - SUB_BITS)) & (SUB_BUCKETS - 1));
+	}
+
+	/**
+	 * Smallest value that falls in a bucket.
+	 */
+	static long lowest(int b) {
+		if (b < SUB_BUCKETS) {
+			return b;
+		}
+		int e = b / SUB_BUCKETS + SUB_BITS - 1;
+		long sub = b % SUB_BUCKETS;
+		if (e >= 63) {
+			return Long.MAX_VALUE;
+		}
+		return (SUB_BUCKETS + sub) << (e - SUB_BITS);
+	}
+
+}
@@ -1,17 +1,28 @@
 package simulation;
 
-import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.Collections;
 import java.util.List;
 
+import agents.ActivityGrid;
 import agents.Agent;
+import agents.AgentArrayStepper;
+import agents.AgentMixedStepper;
+import agents.AgentScheduler;
+import agents.AgentSlots;
+import agents.AgentStore;
+import agents.AgentTileStepper;
+import agents.Checkpoint;
+import agents.ClusterTracker;
+import agents.EmptyCellSearch;
 import agents.Observer;
+import agents.OccupancyGrid;
+import agents.PhaseTimes;
+import agents.PopulationRegistry;
 import agents.Strategy;
-import sim.field.grid.Grid2D;
+import output.MetricsSink;
+import output.TextSink;
+import sim.engine.Stoppable;
 import sim.util.Bag;
-import sim.util.Int2D;
-import sim.util.IntBag;
 import states.SimStateSparseGrid2D;
 
 public class PDWASim extends SimStateSparseGrid2D {
@@ -28,6 +39,7 @@ public class PDWASim extends SimStateSparseGrid2D {
 	private int nPAVLOVMobile = 0;
 	private int nRealisticTFT = 0;
 	private int nRetreat = 0;
+	private String initialCounts = "";
 	private int playRadius = 1;
 	private double errorRate = 0.001;
 	private double probRandomMove = 1.0;
@@ -35,120 +47,355 @@ public class PDWASim extends SimStateSparseGrid2D {
 	private int reproductionRadius = 1;
 	private boolean enforceCapAfterReproduction = false;
 	private int populationCap;
+	private int nextAgentId;
+	private MetricsSink sink;
+	private int sampleInterval = 1;
+	private Observer observer;
+	private Engine engine = Engine.AGENTS;
+	private AgentStore store;
+	private OccupancyGrid occupancy;
+	private AgentArrayStepper arrayStepper;
+	private AgentTileStepper tileStepper;
+	private AgentMixedStepper mixedStepper;
+	private int tiles = 4;
+	private int stepThreads = Runtime.getRuntime().availableProcessors();
+	private boolean denseOccupancy = false;
+	private boolean freeCellIndex = false;
+	private PartnerSelection partnerSelection = PartnerSelection.SCAN;
+	private AgentSlots slots;
+	private AgentScheduler agentScheduler;
+	private boolean activityTracking = false;
+	private ActivityGrid activity;
+	private String clusterGroups = "";
+	private ClusterTracker clusterTracker;
+	private PopulationRegistry population;
+	private boolean verifyPopulation = false;
+	private boolean stopOnSingleStrategy = false;
+	private int steadyWindow = 0;
+	private int steadyTolerance = 0;
+	private double maxSeconds = 0;
+	private Stoppable engineStopper;
+	private Termination termination;
+	private Checkpoint checkpoint;
+	private boolean reseedCheckpoint;
+	private long stepOffset;		// steps taken before the checkpoint this run was restored from
+	private final long initialSeed;
+	private long runSeed;			// seed of the run this one carries on, which is the checkpoint's unless reseeded
+	private boolean phaseTiming = false;
+	private boolean monitor = false;
+	private PhaseTimes phaseTimes = new PhaseTimes();
+	private SimulationMonitor simulationMonitor;
+	private boolean profileSteps = false;
+	private StepProfiler stepProfiler;
+	private final EmptyCellSearch nearby = new EmptyCellSearch();
+	private final EmptyCellSearch.Cells spaceCells = new EmptyCellSearch.Cells() {		// the sparse grid, when there is no occupancy grid
+		@Override
+		public int getWidth() {
+			return gridWidth;
+		}
+		
+		@Override
+		public int getHeight() {
+			return gridHeight;
+		}
+		
+		@Override
+		public boolean isEmpty(int x, int y) {
+			return PDWASim.this.isEmpty(x, y);
+		}
+	};
 	
 	public PDWASim(long seed) {
 		super(seed);
+		initialSeed = seed;
+		runSeed = seed;
 	}
 	
 	public void start() {
 		super.start();
+		nextAgentId = 0;
 		makeSpace(gridWidth, gridHeight);
-		makeAgents();
+		store = null;
+		occupancy = null;
+		arrayStepper = null;
+		tileStepper = null;
+		mixedStepper = null;
+		slots = null;
+		agentScheduler = null;
+		activity = null;
+		termination = null;
+		population = new PopulationRegistry();
+		phaseTimes = new PhaseTimes();
+		phaseTimes.setEnabled(phaseTiming);
+		clusterTracker = null;
+		if (!clusterGroups.trim().isEmpty()) {
+			if (engine == Engine.MIXED) {
+				throw new RuntimeException("Clusters can not be tracked by the well-mixed engine, which has no grid");
+			}
+			clusterTracker = new ClusterTracker(this, clusterGroups);
+		}
+		if (engine == Engine.ARRAYS || engine == Engine.TILED || engine == Engine.MIXED) {
+			makeArrayEngine();
+		} else {
+			if (denseOccupancy || freeCellIndex || partnerSelection == PartnerSelection.SAMPLED) {
+				occupancy = new OccupancyGrid(gridWidth, gridHeight, freeCellIndex);
+				slots = new AgentSlots();
+			}
+			if (activityTracking) {
+				activity = new ActivityGrid(gridWidth, gridHeight, playRadius);
+			}
+			agentScheduler = new AgentScheduler(this);
+			engineStopper = schedule.scheduleRepeating(agentScheduler);
+			agentScheduler.attachStopper(engineStopper);
+		}
+		if (checkpoint != null) {
+			restoreCheckpoint();
+		} else {
+			stepOffset = 0;
+			runSeed = initialSeed;
+			makeAgents();
+		}
 		makeObserver();
+		stepProfiler = null;
+		if (profileSteps) {
+			stepProfiler = new StepProfiler(this);
+			stepProfiler.schedule();
+		}
+		if (monitor) {
+			simulationMonitor = new SimulationMonitor(this);
+			simulationMonitor.register();
+		}
+		return;
+	}
+	
+	/**
+	 * Rebuild the agents from the attached checkpoint instead of making new ones, and carry on counting steps from where it was saved. Unless the run is being reseeded, the random number generators are put
+	 * back last, undoing any draws made while setting up.
+	 */
+	private void restoreCheckpoint() {
+		populationCap = checkpoint.getPopulationCap();
+		runSeed = reseedCheckpoint ? initialSeed : checkpoint.getSeed();
+		checkpoint.restoreAgents(this);
+		nextAgentId = checkpoint.getNextAgentId();
+		stepOffset = checkpoint.getStep();
+		if (!reseedCheckpoint) {
+			checkpoint.restoreRandom(this);
+		}
 		return;
 	}
 	
 	/**
-	 * Make all required agents in the specified quantities. Also sets the population cap to the sum total of the number of initial agents.
+	 * Make all required agents in the specified quantities, strategy by strategy in ordinal order. Also sets the population cap to the sum total of the number of initial agents.
 	 */
 	protected void makeAgents() {
-		populationCap = nNaiveC + nNaiveD + nWalkawayC + nWalkawayD + nTFTStationary + nTFTMobile + nPAVLOVStationary + nPAVLOVMobile + nRealisticTFT + nRetreat;	// we freeze this so it can't be changed while running
-		for (int i = 0; i < nNaiveC; i++) {
-			makeAgent(Strategy.NAIVE_C);
+		int[] counts = initialCounts();
+		populationCap = 0;
+		for (int c : counts) {
+			populationCap += c;		// we freeze this so it can't be changed while running
+		}
+		for (int s = 0; s < counts.length; s++) {
+			for (int i = 0; i < counts[s]; i++) {
+				addAgent(Strategy.forOrdinal(s));
+			}
+		}
+		return;
+	}
+	
+	/**
+	 * Get the number of initial agents of each strategy: the counts of the built-in strategies, plus any given in {@link #getInitialCounts()}.
+	 * @return count of each strategy, by ordinal
+	 */
+	private int[] initialCounts() {
+		int[] counts = new int[Strategy.count()];
+		counts[Strategy.NAIVE_C.ordinal()] = nNaiveC;
+		counts[Strategy.NAIVE_D.ordinal()] = nNaiveD;
+		counts[Strategy.WALKAWAY_C.ordinal()] = nWalkawayC;
+		counts[Strategy.WALKAWAY_D.ordinal()] = nWalkawayD;
+		counts[Strategy.TFT_STATIONARY.ordinal()] = nTFTStationary;
+		counts[Strategy.TFT_MOBILE.ordinal()] = nTFTMobile;
+		counts[Strategy.PAVLOV_STATIONARY.ordinal()] = nPAVLOVStationary;
+		counts[Strategy.PAVLOV_MOBILE.ordinal()] = nPAVLOVMobile;
+		counts[Strategy.REALISTIC_TFT.ordinal()] = nRealisticTFT;
+		counts[Strategy.RETREAT.ordinal()] = nRetreat;
+		for (String entry : initialCounts.split(";")) {
+			if (entry.trim().isEmpty()) {
+				continue;
+			}
+			String[] pair = entry.split("=");
+			if (pair.length != 2) {
+				throw new RuntimeException("Expected STRATEGY=count in initialCounts but found: " + entry);
+			}
+			counts[Strategy.valueOf(pair[0].trim()).ordinal()] += Integer.parseInt(pair[1].trim());
 		}
-		for (int i = 0; i < nNaiveD; i++) {
-			makeAgent(Strategy.NAIVE_D);
+		return counts;
+	}
+	
+	/**
+	 * Make the agent store, occupancy grid and single stepper used by the array engine. The store is sized for the largest population the rules allow: the population cap, or the whole grid if the cap is only
+	 * enforced after reproduction. The well-mixed engine has no grid, so its store holds the population cap plus, when the cap is enforced after reproduction, the one agent that may be born before another is
+	 * removed; a full store then stops births as a full grid would.
+	 */
+	protected void makeArrayEngine() {
+		int cap = 0;
+		if (checkpoint != null) {
+			cap = checkpoint.getPopulationCap();
+		} else {
+			for (int c : initialCounts()) {
+				cap += c;
+			}
 		}
-		for (int i = 0; i < nWalkawayC; i++) {
-			makeAgent(Strategy.WALKAWAY_C);
+		if (engine == Engine.MIXED) {
+			store = new AgentStore(enforceCapAfterReproduction ? cap + 1 : cap, false);
+			mixedStepper = new AgentMixedStepper(this);
+			engineStopper = schedule.scheduleRepeating(mixedStepper);
+			mixedStepper.attachStopper(engineStopper);
+			return;
 		}
-		for (int i = 0; i < nWalkawayD; i++) {
-			makeAgent(Strategy.WALKAWAY_D);
+		int area = gridWidth * gridHeight;
+		store = new AgentStore(enforceCapAfterReproduction ? area : Math.min(cap, area), true);
+		occupancy = new OccupancyGrid(gridWidth, gridHeight, freeCellIndex);
+		if (engine == Engine.TILED) {
+			if (freeCellIndex) {		// tiles move agents concurrently, and the index can only be updated by one thread
+				throw new RuntimeException("The free-cell index can not be used with the tiled engine");
+			}
+			tileStepper = new AgentTileStepper(this, tiles, stepThreads);
+			engineStopper = schedule.scheduleRepeating(tileStepper);
+			tileStepper.attachStopper(engineStopper);
+		} else {
+			arrayStepper = new AgentArrayStepper(this);
+			engineStopper = schedule.scheduleRepeating(arrayStepper);
+			arrayStepper.attachStopper(engineStopper);
 		}
-		for (int i = 0; i < nTFTStationary; i++) {
-			makeAgent(Strategy.TFT_STATIONARY);
+		return;
+	}
+	
+	public void finish() {
+		super.finish();
+		if (termination == null) {
+			termination = Termination.STOPPED;
 		}
-		for (int i = 0; i < nTFTMobile; i++) {
-			makeAgent(Strategy.TFT_MOBILE);
+		if (observer != null) {
+			observer.finish();
 		}
-		for (int i = 0; i < nPAVLOVStationary; i++) {
-			makeAgent(Strategy.PAVLOV_STATIONARY);
+		if (tileStepper != null) {
+			tileStepper.shutdown();
 		}
-		for (int i = 0; i < nPAVLOVMobile; i++) {
-			makeAgent(Strategy.PAVLOV_MOBILE);
+		if (simulationMonitor != null) {
+			simulationMonitor.unregister();
+			simulationMonitor = null;
 		}
-		for (int i = 0; i < nRealisticTFT; i++) {
-			makeAgent(Strategy.REALISTIC_TFT);
+		return;
+	}
+	
+	/**
+	 * Add an initial agent with the given strategy at a random location, using whichever engine is selected.
+	 * @param strat game strategy
+	 */
+	private void addAgent(Strategy strat) {
+		boolean placed;
+		if (tileStepper != null) {
+			placed = tileStepper.makeAgent(strat) >= 0;
+		} else if (arrayStepper != null) {
+			placed = arrayStepper.makeAgent(strat) >= 0;
+		} else if (mixedStepper != null) {
+			placed = mixedStepper.makeAgent(strat) >= 0;
+		} else {
+			placed = makeAgent(strat) != null;
 		}
-		for(int i = 0; i < nRetreat; i++) {
-			makeAgent(Strategy.RETREAT);
+		if (!placed) {
+			throw new RuntimeException("No room on the grid for the initial agents");
 		}
 		return;
 	}
 	
 	/**
-	 * Make a new agent with the given strategy.
+	 * Make a new agent with the given strategy at a random empty location. With the free-cell index the location is drawn directly from the empty cells; otherwise random cells are tried until an empty one
+	 * turns up, which slows down as the grid fills and never finishes if it is full.
 	 * @param strat game strategy
-	 * @return the new agent
+	 * @return the new agent, or null if the grid is full
 	 */
 	public Agent makeAgent(Strategy strat) {
 		int x, y;
-		Bag test;
-		do {
-			x = random.nextInt(gridWidth);
-			y = random.nextInt(gridHeight);
-			test = space.getObjectsAtLocation(x, y);
-		} while (test != null && test.numObjs != 0);
-		Agent a = new Agent(this, x, y, strat);
-		RGBTColor col = colorByStrategy(strat);
-		gui.setOvalPortrayal2DColor(a, col.red, col.green, col.blue, col.alpha);
-		a.attachStopper(schedule.scheduleRepeating(a));
+		if (occupancy != null && occupancy.isIndexingFreeCells()) {
+			int cell = occupancy.randomEmptyCell(random);
+			if (cell < 0) {
+				return null;
+			}
+			x = cell % gridWidth;
+			y = cell / gridWidth;
+		} else {
+			do {
+				x = random.nextInt(gridWidth);
+				y = random.nextInt(gridHeight);
+			} while (!isEmpty(x, y));
+		}
+		Agent a = agentScheduler.makeAgent(x, y, strat);
+		portray(a, strat);
 		space.setObjectLocation(a, x, y);
+		a.attachOccupancy();
 		return a;
 	}
 	
+	/**
+	 * Make a new agent with the given strategy at a random empty location within <i>radius</i> of (<i>x</i>, <i>y</i>); see {@link #findEmptyCellNear(int, int, int)}.
+	 * @param x x-coordinate to look around
+	 * @param y y-coordinate to look around
+	 * @param radius distance from (x, y) to search
+	 * @param strat game strategy
+	 * @return the new agent, or null if there are no empty locations nearby
+	 */
 	public Agent makeAgentNear(int x, int y, int radius, Strategy strat) {
-		Int2D location = getEmptyLocationNear(x, y, radius);
-		if (location == null) {									// if there are no empty locations, we return null
+		int cell = findEmptyCellNear(x, y, radius);
+		if (cell < 0) {									// if there are no empty locations, we return null
 			return null;
 		}
-		int newx = location.x;
-		int newy = location.y;
-		Agent a = new Agent(this, newx, newy, strat);
-		RGBTColor col = colorByStrategy(strat);
-		gui.setOvalPortrayal2DColor(a, col.red, col.green, col.blue, col.alpha);
-		a.attachStopper(schedule.scheduleRepeating(a));
+		int newx = cell % gridWidth;
+		int newy = cell / gridWidth;
+		Agent a = agentScheduler.makeAgent(newx, newy, strat);
+		portray(a, strat);
 		space.setObjectLocation(a, newx, newy);
+		a.attachOccupancy();
 		return a;
 	}
 	
 	/**
-	 * Returns a random, empty location within <i>radius</i> units of the given (<i>x</i>, <i>y</i>) location, or null if there are no empty locations nearby. Can return the location (<i>x</i>, <i>y</i>) if it
-	 * is empty.
+	 * Find a random, empty location within <i>radius</i> units of the given (<i>x</i>, <i>y</i>) location. Can return the location (<i>x</i>, <i>y</i>) if it is empty. Locations are drawn with the
+	 * simulation's random number generator, so runs are replicable, and nothing is allocated.
 	 * @param x x-coordinate to look around
 	 * @param y y-coordinate to look around
 	 * @param radius distance from (x, y) to search
-	 * @return random, empty location or null
-	 */
-	public Int2D getEmptyLocationNear(int x, int y, int radius) {
-		Bag test;
-		IntBag xlocs = new IntBag();
-		IntBag ylocs = new IntBag();
-		space.getMooreLocations(x, y, radius, Grid2D.TOROIDAL, true, xlocs, ylocs);
-		int size = xlocs.numObjs;
-		ArrayList<Integer> selector = new ArrayList<>();
-		for (int i = 0; i < size; i++) {
-			selector.add(new Integer(i));
+	 * @return random, empty location packed as y * gridWidth + x, or -1 if there are no empty locations nearby
+	 */
+	public int findEmptyCellNear(int x, int y, int radius) {
+		return nearby.nearby(occupancy != null ? occupancy : spaceCells, x, y, radius, random);
+	}
+	
+	/**
+	 * Is the given location free of agents? Uses the dense occupancy index if it is switched on.
+	 * @param x x-coordinate
+	 * @param y y-coordinate
+	 * @return true if the location is empty
+	 */
+	private boolean isEmpty(int x, int y) {
+		if (occupancy != null) {
+			return occupancy.isEmpty(x, y);
 		}
-		Collections.shuffle(selector);		// NOTE NOTE NOTE! This does not use the MASON random number generator, which means this isn't replicable, but we will let it go for simplicity's sake
-		for (int i = 0; i < size; i++) {			// we step through the now randomly-ordered list of indexes into the available locations and return the first empty one
-			int index = selector.get(i);
-			test = space.getObjectsAtLocation(xlocs.objs[index], ylocs.objs[index]);
-			if (test == null || test.numObjs == 0) {
-				return new Int2D(xlocs.objs[index], ylocs.objs[index]);
-			}
+		Bag test = space.getObjectsAtLocation(x, y);
+		return test == null || test.numObjs == 0;
+	}
+	
+	/**
+	 * Set up the portrayal of a new agent according to its strategy. When running headless there is no GUI attached, so portrayal is skipped entirely.
+	 * @param a the new agent
+	 * @param strat the agent's strategy
+	 */
+	private void portray(Agent a, Strategy strat) {
+		if (gui == null) {
+			return;
 		}
-		return null;		// if we've gotten to this point, there are no empty locations, so we return null
+		RGBTColor col = colorByStrategy(strat);
+		gui.setOvalPortrayal2DColor(a, col.red, col.green, col.blue, col.alpha);
+		return;
 	}
 	
 	/**
@@ -157,42 +404,195 @@ public class PDWASim extends SimStateSparseGrid2D {
 	 * @return the color description
 	 */
 	private RGBTColor colorByStrategy(Strategy strat) {
-		switch (strat) {
-			case NAIVE_C:
-				return new RGBTColor(0, 1, 0, 1);
-			case NAIVE_D:
-				return new RGBTColor(1, 0, 0, 1);
-			case PAVLOV_MOBILE:
-				return new RGBTColor(1, .5, 0, 1);
-			case PAVLOV_STATIONARY:
-				return new RGBTColor(1, 1, 0, 1);
-			case TFT_MOBILE:
-				return new RGBTColor(1, 1, 1, 1);
-			case TFT_STATIONARY:
-				return new RGBTColor(.5, .5, .5, 1);
-			case WALKAWAY_C:
-				return new RGBTColor(0, 0, 1, 1);
-			case WALKAWAY_D:
-				return new RGBTColor(1, 0, 1, 1);
-			case REALISTIC_TFT:
-				return new RGBTColor(1, .5, .5, 1);
-			default:
-		}
-		return new RGBTColor(0, 1, 1, 1);
+		return new RGBTColor(strat.getRed(), strat.getGreen(), strat.getBlue(), 1);
 	}
 	
 	/**
-	 * Make the observer for data output (and resetting agents at the end of each time step).
+	 * Make the observer for data output, which runs at the end of every sampled time step. Data goes to the attached sink, or to standard out if none has been attached. Samples are taken on multiples of the
+	 * sample interval, counting any steps taken before a checkpoint.
 	 */
 	protected void makeObserver() {
-		Observer o = new Observer(this);
-		o.attachStopper(schedule.scheduleRepeating(0, 100, o));
+		observer = new Observer(this, sink != null ? sink : TextSink.stdout());
+		observer.attachStopper(schedule.scheduleRepeating((sampleInterval - stepOffset % sampleInterval) % sampleInterval, 100, observer, sampleInterval));
+		return;
+	}
+	
+	/**
+	 * End the run: record why, and take the agents off the schedule so they do not act again. The observer, which calls this when one of the termination criteria is met, takes itself off the schedule, which is
+	 * then empty. Only the first reason given is kept.
+	 * @param reason why the run ended
+	 */
+	public void terminate(Termination reason) {
+		if (termination == null) {
+			termination = reason;
+		}
+		if (engineStopper != null) {
+			engineStopper.stop();
+		}
+		return;
+	}
+	
+	/**
+	 * Get the reason the current run ended.
+	 * @return the reason, or null if the run has not ended; a run finished without a reason being given to {@link #terminate(Termination)} ends as {@link Termination#STOPPED}
+	 */
+	public Termination acquireTermination() {
+		return termination;
+	}
+	
+	/**
+	 * Start from a checkpoint instead of placing new agents, when the simulation is next started. The simulation's parameters are not changed, so to carry on exactly where the checkpoint left off, apply
+	 * {@link Checkpoint#getParameters()} first; the grid and engine must match the checkpoint's, but other parameters can be changed to branch from the saved state.
+	 * @param checkpoint checkpoint to start from, or null to start afresh
+	 * @param reseed true to keep this simulation's own random number generator, seeded as usual, rather than the saved one
+	 */
+	public void attachCheckpoint(Checkpoint checkpoint, boolean reseed) {
+		this.checkpoint = checkpoint;
+		this.reseedCheckpoint = reseed;
 		return;
 	}
 	
+	/**
+	 * Get the seed that identifies the current run: the one this simulation was made with, unless it carries on exactly from a checkpoint, in which case it is the seed of the run that saved the checkpoint.
+	 * @return seed
+	 */
+	public long acquireSeed() {
+		return runSeed;
+	}
+	
+	/**
+	 * Get the number of steps taken in the current run, including those taken before the checkpoint it was restored from. Observer data and step limits are in these steps; the schedule's own count starts
+	 * from 0 when restoring.
+	 * @return step count
+	 */
+	public long acquireStep() {
+		return stepOffset + schedule.getSteps();
+	}
+	
 	public int acquirePopulationCap() {
 		return populationCap;
 	}
+	
+	/**
+	 * Get the next unused agent ID number. IDs are unique within this simulation only, so independent simulations can run side by side.
+	 * @return new ID number
+	 */
+	public int acquireNextAgentId() {
+		return nextAgentId++;
+	}
+	
+	/**
+	 * Get the number of agent IDs handed out so far, without handing out another.
+	 * @return the next ID number
+	 */
+	public int acquireIssuedAgentIds() {
+		return nextAgentId;
+	}
+	
+	/**
+	 * Send the observer's data to the given sink instead of standard out. Must be called before the simulation is started; the sink is closed when the simulation finishes.
+	 * @param sink data sink
+	 */
+	public void attachSink(MetricsSink sink) {
+		this.sink = sink;
+		return;
+	}
+	
+	/**
+	 * Get the agent store used by the array engine.
+	 * @return the store, or null when running the agent engine
+	 */
+	public AgentStore acquireAgentStore() {
+		return store;
+	}
+	
+	/**
+	 * Get the stepper used by the tiled engine.
+	 * @return the stepper, or null when running another engine
+	 */
+	public AgentTileStepper acquireTileStepper() {
+		return tileStepper;
+	}
+	
+	/**
+	 * Get the stepper used by the well-mixed engine.
+	 * @return the stepper, or null when running another engine
+	 */
+	public AgentMixedStepper acquireMixedStepper() {
+		return mixedStepper;
+	}
+	
+	/**
+	 * Get the dense occupancy grid.
+	 * @return the grid, or null if the selected engine does not use one
+	 */
+	public OccupancyGrid acquireOccupancy() {
+		return occupancy;
+	}
+	
+	/**
+	 * Get the table mapping occupancy grid slots to agents when the agent engine uses the dense occupancy index.
+	 * @return the slot table, or null if the index is not in use
+	 */
+	public AgentSlots acquireAgentSlots() {
+		return slots;
+	}
+	
+	/**
+	 * Get the scheduler that steps the agent engine's agents.
+	 * @return the scheduler, or null when running an array engine
+	 */
+	public AgentScheduler acquireAgentScheduler() {
+		return agentScheduler;
+	}
+	
+	/**
+	 * Get the record of where agents have arrived, which lets isolated agents of the agent engine sleep.
+	 * @return the activity grid, or null if activity tracking is off or an array engine is running
+	 */
+	public ActivityGrid acquireActivity() {
+		return activity;
+	}
+	
+	/**
+	 * Get the tracker of the spatial clusters formed by the cluster groups.
+	 * @return the tracker, or null if no cluster groups are set
+	 */
+	public ClusterTracker acquireClusterTracker() {
+		return clusterTracker;
+	}
+	
+	/**
+	 * Get the running per-strategy counts and resource sums for the current run.
+	 * @return the population registry, or null if the simulation has not been started
+	 */
+	public PopulationRegistry acquirePopulation() {
+		return population;
+	}
+	
+	/**
+	 * Get the time spent in each phase of the agents' turns in the current run, which is only collected while phase timing is on.
+	 * @return the phase times
+	 */
+	public PhaseTimes acquirePhaseTimes() {
+		return phaseTimes;
+	}
+	
+	/**
+	 * Get the step profiler for the current run.
+	 * @return the profiler, or null if steps are not being profiled
+	 */
+	public StepProfiler acquireStepProfiler() {
+		return stepProfiler;
+	}
+	
+	/**
+	 * Get the observer for the current run, or null if the simulation has not been started.
+	 * @return the observer
+	 */
+	public Observer acquireObserver() {
+		return observer;
+	}
 
 	public int getGridWidth() {
 		return gridWidth;
@@ -348,6 +748,217 @@ public class PDWASim extends SimStateSparseGrid2D {
 		this.nRetreat = nRetreat;
 	}
 
+	public String getInitialCounts() {
+		return initialCounts;
+	}
+
+	/**
+	 * Set initial agents of any registered strategy, including those added through {@link Strategy#register}, on top of the counts of the built-in strategies set individually; takes effect when the simulation
+	 * is next started.
+	 * @param initialCounts STRATEGY=count entries separated by semicolons, such as <i>NAIVE_C=50;MY_STRATEGY=100</i>
+	 */
+	public void setInitialCounts(String initialCounts) {
+		this.initialCounts = initialCounts == null ? "" : initialCounts;
+	}
+
+	public Engine getEngine() {
+		return engine;
+	}
+
+	public void setEngine(Engine engine) {
+		this.engine = engine;
+	}
+
+	public int getSampleInterval() {
+		return sampleInterval;
+	}
+
+	/**
+	 * Set how many steps apart the observer samples the population; takes effect when the simulation is next started.
+	 * @param sampleInterval steps between samples, at least 1
+	 */
+	public void setSampleInterval(int sampleInterval) {
+		this.sampleInterval = Math.max(1, sampleInterval);
+	}
+
+	public int getTiles() {
+		return tiles;
+	}
+
+	public void setTiles(int tiles) {
+		this.tiles = tiles;
+	}
+
+	public int getStepThreads() {
+		return stepThreads;
+	}
+
+	public void setStepThreads(int stepThreads) {
+		this.stepThreads = stepThreads;
+	}
+
+	public boolean isDenseOccupancy() {
+		return denseOccupancy;
+	}
+
+	public void setDenseOccupancy(boolean denseOccupancy) {
+		this.denseOccupancy = denseOccupancy;
+	}
+
+	public PartnerSelection getPartnerSelection() {
+		return partnerSelection;
+	}
+
+	/**
+	 * Set how agents pick partners; see {@link PartnerSelection}. With {@link PartnerSelection#SAMPLED} the agent engine always keeps the dense occupancy index, so switching to it
+	 * during a run of the agent engine without that index takes effect when the simulation is next started.
+	 * @param partnerSelection partner selection rule
+	 */
+	public void setPartnerSelection(PartnerSelection partnerSelection) {
+		this.partnerSelection = partnerSelection;
+	}
+
+	public boolean isFreeCellIndex() {
+		return freeCellIndex;
+	}
+
+	/**
+	 * Keep an index of empty cells so agents placed at random locations are placed in constant time at any density. In the agent engine this implies the dense occupancy index. Not available with the tiled
+	 * engine.
+	 * @param freeCellIndex true to index empty cells
+	 */
+	public void setFreeCellIndex(boolean freeCellIndex) {
+		this.freeCellIndex = freeCellIndex;
+	}
+
+	public boolean isActivityTracking() {
+		return activityTracking;
+	}
+
+	/**
+	 * Let isolated stationary agents of the agent engine sleep until another agent moves or is born within their play radius, instead of searching their empty neighborhood every step; see
+	 * {@link ActivityGrid}. Runs are exactly the same as without it. Takes effect when the simulation is next started, and agents only fall asleep while the play radius is the one it started with.
+	 * @param activityTracking true to track activity
+	 */
+	public void setActivityTracking(boolean activityTracking) {
+		this.activityTracking = activityTracking;
+	}
+
+	public String getClusterGroups() {
+		return clusterGroups;
+	}
+
+	/**
+	 * Track the spatial clusters formed by groups of strategies, and report each group's number of clusters, largest cluster and cluster sizes in the observer data, after the strategy counts; see
+	 * {@link ClusterTracker}. Groups are given as <code>name=STRATEGY+STRATEGY+...</code>, separated by semicolons, for example
+	 * <code>cooperators=NAIVE_C+WALKAWAY_C+TFT_STATIONARY+TFT_MOBILE+REALISTIC_TFT</code>; a strategy can be in at most one group. Empty (the default) to track no clusters. Takes effect when the simulation is
+	 * next started, and not available with the well-mixed engine.
+	 * @param clusterGroups groups of strategies, or empty
+	 */
+	public void setClusterGroups(String clusterGroups) {
+		this.clusterGroups = clusterGroups;
+	}
+
+	public boolean isVerifyPopulation() {
+		return verifyPopulation;
+	}
+
+	/**
+	 * Debugging aid: have the observer check the population registry against a full count of the agents every step, and the cluster tracker (if clusters are tracked) against a flood fill of the grid,
+	 * failing on any difference.
+	 * @param verifyPopulation true to check every step
+	 */
+	public void setVerifyPopulation(boolean verifyPopulation) {
+		this.verifyPopulation = verifyPopulation;
+	}
+
+	public boolean isStopOnSingleStrategy() {
+		return stopOnSingleStrategy;
+	}
+
+	/**
+	 * End the run as soon as only one strategy has any agents left. Offspring inherit their parent's strategy, so from then on nothing can change but the size of the population.
+	 * @param stopOnSingleStrategy true to stop on a single strategy
+	 */
+	public void setStopOnSingleStrategy(boolean stopOnSingleStrategy) {
+		this.stopOnSingleStrategy = stopOnSingleStrategy;
+	}
+
+	public int getSteadyWindow() {
+		return steadyWindow;
+	}
+
+	/**
+	 * End the run once no strategy's count has moved by more than {@link #getSteadyTolerance()} over this many steps of observer samples; takes effect when the simulation is next started.
+	 * @param steadyWindow window length in steps, or 0 not to detect a steady state
+	 */
+	public void setSteadyWindow(int steadyWindow) {
+		this.steadyWindow = Math.max(0, steadyWindow);
+	}
+
+	public int getSteadyTolerance() {
+		return steadyTolerance;
+	}
+
+	/**
+	 * Set how far each strategy's count may range over the steady-state window, in agents; takes effect when the simulation is next started.
+	 * @param steadyTolerance largest difference between a strategy's highest and lowest count that is still steady
+	 */
+	public void setSteadyTolerance(int steadyTolerance) {
+		this.steadyTolerance = Math.max(0, steadyTolerance);
+	}
+
+	public double getMaxSeconds() {
+		return maxSeconds;
+	}
+
+	/**
+	 * End the run, at the next observer sample, once it has been running for this much wall-clock time. Runs cut short this way are not reproducible from their seed; takes effect when the simulation is next
+	 * started.
+	 * @param maxSeconds time budget in seconds, or 0 for none
+	 */
+	public void setMaxSeconds(double maxSeconds) {
+		this.maxSeconds = Math.max(0, maxSeconds);
+	}
+
+	public boolean isPhaseTiming() {
+		return phaseTiming;
+	}
+
+	/**
+	 * Time each phase of the agents' turns (partner lookup, strategy selection, payoff, movement, reproduction); see {@link PhaseTimes}. Adds two clock reads per phase per turn. Can also be switched during a
+	 * run through the JMX monitor.
+	 * @param phaseTiming true to time the phases
+	 */
+	public void setPhaseTiming(boolean phaseTiming) {
+		this.phaseTiming = phaseTiming;
+		phaseTimes.setEnabled(phaseTiming);
+	}
+
+	public boolean isMonitor() {
+		return monitor;
+	}
+
+	/**
+	 * Expose the run through JMX while it lasts; see {@link SimulationMonitor}. Takes effect when the simulation is next started.
+	 * @param monitor true to register the monitor
+	 */
+	public void setMonitor(boolean monitor) {
+		this.monitor = monitor;
+	}
+
+	public boolean isProfileSteps() {
+		return profileSteps;
+	}
+
+	/**
+	 * Record the wall time of every step, and of its engine and observer phases, in histograms, and keep the slowest steps; see {@link StepProfiler}. Takes effect when the simulation is next started.
+	 * @param profileSteps true to profile steps
+	 */
+	public void setProfileSteps(boolean profileSteps) {
+		this.profileSteps = profileSteps;
+	}
+
 	public boolean isEnforceCapAfterReproduction() {
 		return enforceCapAfterReproduction;
 	}
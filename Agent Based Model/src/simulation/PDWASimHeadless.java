@@ -0,0 +1,142 @@
+package simulation;
+
+import java.util.Properties;
+
+import agents.Checkpoint;
+import agents.PhaseTimes;
+import output.BinaryColumnSink;
+import output.NullSink;
+import output.TextSink;
+
+/**
+ * Runs the simulation without a GUI. Data lines from the observer go to standard out as usual, or to a file with <i>-out</i> (or nowhere with <i>-out none</i>); a <i>.pdwc</i> file is written in the binary
+ * column format, with <i>-encoding</i> choosing delta or fixed-width values. The run summary (including steps per second, and why the run ended) goes to standard error so the data stays clean.
+ * <p>
+ * Usage: <code>java simulation.PDWASimHeadless [-seed n] [-steps n] [-params file.properties] [-out file.tsv|file.csv|file.pdwc|none] [-encoding delta|fixed] [-restore file] [-save file] [-parameterName value ...]</code>
+ * <p>
+ * Parameters from the file are applied first, then those on the command line, so the command line can override a shared file.
+ * <p>
+ * With <i>-save</i>, a {@link Checkpoint} of the final state is written when the run ends. With <i>-restore</i>, the run starts from a checkpoint instead, with the checkpoint's parameters applied before any
+ * others, and goes on until <i>-steps</i> steps have been taken counting those before the checkpoint. It carries on exactly where the checkpoint left off, reporting (and writing to a <i>.pdwc</i> header) the seed
+ * of the run that saved it, unless <i>-seed</i> is also given, in which case it branches from there with a generator seeded afresh.
+ * <p>
+ * With <i>-monitor true</i> the run can be watched through JMX while it goes (see {@link SimulationMonitor}); with <i>-phaseTiming true</i> the time spent in each phase of the agents' turns is also printed
+ * with the summary. With <i>-profileSteps true</i>, percentiles of the step times and the slowest steps are printed too (see {@link StepProfiler}).
+ */
+public class PDWASimHeadless {
+
+	public static final long DEFAULT_STEPS = 10000;
+
+	public static void main(String[] args) {
+		long seed = System.currentTimeMillis();
+		long steps = DEFAULT_STEPS;
+		String out = "-";
+		String encoding = "delta";
+		boolean seedGiven = false;
+		Checkpoint checkpoint = null;
+		String save = null;
+		Properties fileParams = new Properties();
+		Properties argParams = new Properties();
+		for (int i = 0; i < args.length; i++) {
+			if (!args[i].startsWith("-") || i + 1 >= args.length) {
+				usage("Expected -name value pairs but found: " + args[i]);
+			}
+			String name = args[i].substring(1);
+			String value = args[++i];
+			if (name.equals("seed")) {
+				seed = Long.parseLong(value);
+				seedGiven = true;
+			} else if (name.equals("steps")) {
+				steps = Long.parseLong(value);
+			} else if (name.equals("params")) {
+				fileParams.putAll(Parameters.load(value));
+			} else if (name.equals("out")) {
+				out = value;
+			} else if (name.equals("encoding")) {
+				encoding = value;
+			} else if (name.equals("restore")) {
+				checkpoint = Checkpoint.load(value);
+			} else if (name.equals("save")) {
+				save = value;
+			} else if (Parameters.isParameter(name)) {
+				argParams.setProperty(name, value);
+			} else {
+				usage("Unknown parameter: " + name);
+			}
+		}
+		if (checkpoint != null && !seedGiven) {		// carrying on from the checkpoint's generator, so the output belongs to the run that saved it
+			seed = checkpoint.getSeed();
+		}
+		PDWASim sim = new PDWASim(seed);
+		if (checkpoint != null) {
+			Parameters.apply(sim, checkpoint.getParameters());
+			sim.attachCheckpoint(checkpoint, seedGiven);
+		}
+		Parameters.apply(sim, fileParams);
+		Parameters.apply(sim, argParams);
+		if (out.equals("none")) {
+			sim.attachSink(new NullSink());
+		} else if (out.endsWith(".pdwc")) {
+			sim.attachSink(new BinaryColumnSink(out, seed, Parameters.describe(sim), encoding.equals("fixed") ? BinaryColumnSink.FIXED : BinaryColumnSink.DELTA));
+		} else if (!out.equals("-")) {
+			sim.attachSink(TextSink.file(out));
+		}
+		long start = System.nanoTime();
+		long done = run(sim, steps, save);
+		double seconds = (System.nanoTime() - start) / 1e9;
+		long taken = done - (checkpoint != null ? checkpoint.getStep() : 0);
+		System.err.println("seed=" + seed + "; steps=" + done + "; seconds=" + seconds + "; steps/sec=" + (taken / seconds) + "; termination=" + sim.acquireTermination());
+		if (sim.isPhaseTiming()) {
+			StringBuilder sb = new StringBuilder("phase seconds:");
+			for (int p = 0; p < PhaseTimes.NAMES.length; p++) {
+				sb.append(' ').append(PhaseTimes.NAMES[p]).append('=').append(sim.acquirePhaseTimes().getNanos(p) / 1e9);
+			}
+			System.err.println(sb);
+		}
+		if (sim.acquireStepProfiler() != null) {
+			sim.acquireStepProfiler().report(System.err);
+		}
+		return;
+	}
+
+	/**
+	 * Start the simulation, step it until it either runs out of steps or meets one of its termination criteria, then finish it. The reason it ended is left in {@link PDWASim#acquireTermination()}.
+	 * @param sim simulation to run; must not have been started
+	 * @param steps maximum number of steps, counting any taken before the checkpoint the simulation is restored from
+	 * @return number of steps taken, counting any taken before the checkpoint the simulation is restored from
+	 */
+	public static long run(PDWASim sim, long steps) {
+		return run(sim, steps, null);
+	}
+
+	/**
+	 * Run the simulation as {@link #run(PDWASim, long)} does, saving a checkpoint of its final state before finishing it.
+	 * @param sim simulation to run; must not have been started
+	 * @param steps maximum number of steps, counting any taken before the checkpoint the simulation is restored from
+	 * @param checkpointPath file to save the checkpoint to, or null not to save one
+	 * @return number of steps taken, counting any taken before the checkpoint the simulation is restored from
+	 */
+	public static long run(PDWASim sim, long steps, String checkpointPath) {
+		sim.start();
+		while (sim.acquireStep() < steps) {
+			if (!sim.schedule.step(sim)) {
+				break;
+			}
+		}
+		if (sim.acquireTermination() == null) {
+			sim.terminate(Termination.STEP_LIMIT);
+		}
+		long done = sim.acquireStep();
+		if (checkpointPath != null) {
+			Checkpoint.save(sim, checkpointPath);
+		}
+		sim.finish();
+		return done;
+	}
+
+	private static void usage(String problem) {
+		Parameters.usage(problem, "java simulation.PDWASimHeadless [-seed n] [-steps n] [-params file.properties] [-out file.tsv|file.csv|file.pdwc|none] [-encoding delta|fixed] [-restore file] [-save file] [-parameterName value ...]");
+		return;
+	}
+
+}
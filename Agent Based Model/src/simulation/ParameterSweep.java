@@ -0,0 +1,382 @@
+package simulation;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import agents.Checkpoint;
+import agents.Strategy;
+import output.NullSink;
+import output.TextSink;
+
+/**
+ * Runs every combination of a parameter grid with every seed in a list, running replicates concurrently on a fixed number of threads inside one JVM. Each replicate has its own {@link PDWASim} and its own output,
+ * and results are collected by position rather than completion order, so the aggregated table for a given grid and seed list is the same no matter how many threads are used.
+ * <p>
+ * Usage: <code>java simulation.ParameterSweep -seeds 1..50 [-sweep name=v1,v2,... ...] [-threads n] [-steps n] [-out dir | -aggregate file.tsv [-quantiles q1,q2,...]] [-params file.properties]
+ * [-restore file] [-parameterName value ...]</code>
+ * <p>
+ * With <i>-out</i>, each replicate's data lines are written to their own file in that directory; otherwise they are discarded and only the aggregated table of final counts is printed.
+ * <p>
+ * With <i>-aggregate</i>, the replicates' data lines are instead summarized across seeds as they run by a {@link ReplicateAggregator} per parameter point, and only the summary is written to the given file:
+ * for every point and sampled step, the number of replicates and each column's mean, standard deviation and quantiles (by default those of {@link ReplicateAggregator#DEFAULT_QUANTILES}).
+ * <p>
+ * With <i>-restore</i>, every replicate is warm-started from the same {@link Checkpoint} (read once and shared) instead of from scratch, with the checkpoint's parameters applied before any others and its
+ * generator reseeded with the replicate's seed, so a sweep can branch from one equilibrated state without repeating the burn-in.
+ */
+public class ParameterSweep {
+
+	private final Map<String, List<String>> grid = new LinkedHashMap<>();
+	private final Properties fixed = new Properties();
+	private long[] seeds = new long[] { 0 };
+	private int threads = Runtime.getRuntime().availableProcessors();
+	private long steps = PDWASimHeadless.DEFAULT_STEPS;
+	private File outputDir;
+	private Checkpoint checkpoint;
+	private double[] quantiles;		// null unless aggregating
+	private List<ReplicateAggregator> aggregators;
+
+	/**
+	 * Add a swept parameter. Parameters are varied in the order they are added, the last one fastest.
+	 * @param name parameter name
+	 * @param values values to try
+	 */
+	public void addSweep(String name, List<String> values) {
+		if (!Parameters.isParameter(name)) {
+			throw new RuntimeException("Unknown simulation parameter: " + name);
+		}
+		grid.put(name, new ArrayList<>(values));
+		return;
+	}
+
+	/**
+	 * Set a parameter that is the same for every replicate.
+	 * @param name parameter name
+	 * @param value parameter value
+	 */
+	public void addFixed(String name, String value) {
+		fixed.setProperty(name, value);
+		return;
+	}
+
+	public void setSeeds(long[] seeds) {
+		this.seeds = seeds.clone();
+	}
+
+	public void setThreads(int threads) {
+		this.threads = threads;
+	}
+
+	public void setSteps(long steps) {
+		this.steps = steps;
+	}
+
+	public void setOutputDir(File outputDir) {
+		this.outputDir = outputDir;
+	}
+
+	public void setCheckpoint(Checkpoint checkpoint) {
+		this.checkpoint = checkpoint;
+	}
+
+	/**
+	 * Summarize each parameter point's data lines across seeds instead of writing or discarding them; see {@link #printAggregates(PrintStream)}.
+	 * @param quantiles quantiles to report, or null to not aggregate
+	 */
+	public void setAggregateQuantiles(double[] quantiles) {
+		this.quantiles = quantiles == null ? null : quantiles.clone();
+	}
+
+	/**
+	 * Expand the grid into the list of parameter points, the last swept parameter varying fastest.
+	 * @return one properties object per point
+	 */
+	public List<Properties> points() {
+		List<Properties> points = new ArrayList<>();
+		points.add(new Properties());
+		for (Map.Entry<String, List<String>> e : grid.entrySet()) {
+			List<Properties> next = new ArrayList<>();
+			for (Properties p : points) {
+				for (String v : e.getValue()) {
+					Properties q = new Properties();
+					q.putAll(p);
+					q.setProperty(e.getKey(), v);
+					next.add(q);
+				}
+			}
+			points = next;
+		}
+		return points;
+	}
+
+	/**
+	 * Run every replicate and wait for all of them to finish.
+	 * @return results ordered by parameter point, then by seed
+	 */
+	public List<Result> run() {
+		if (outputDir != null) {
+			outputDir.mkdirs();
+		}
+		List<Properties> points = points();
+		aggregators = null;
+		if (quantiles != null) {
+			aggregators = new ArrayList<>();
+			for (int p = 0; p < points.size(); p++) {
+				aggregators.add(new ReplicateAggregator(quantiles));
+			}
+		}
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		List<Future<Result>> futures = new ArrayList<>();
+		try {
+			for (int p = 0; p < points.size(); p++) {
+				for (long seed : seeds) {
+					final int point = p;
+					final Properties params = points.get(p);
+					final long s = seed;
+					futures.add(executor.submit(() -> runReplicate(point, params, s)));
+				}
+			}
+			List<Result> results = new ArrayList<>();
+			for (Future<Result> f : futures) {
+				results.add(f.get());
+			}
+			return results;
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new RuntimeException("Sweep interrupted", e);
+		} catch (ExecutionException e) {
+			throw new RuntimeException("Replicate failed", e.getCause());
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	/**
+	 * Run a single replicate on the calling thread.
+	 * @param point index of the parameter point
+	 * @param params swept parameter values for this point
+	 * @param seed random seed
+	 * @return final counts for the replicate
+	 */
+	private Result runReplicate(int point, Properties params, long seed) {
+		PDWASim sim = new PDWASim(seed);
+		if (checkpoint != null) {
+			Parameters.apply(sim, checkpoint.getParameters());
+			sim.attachCheckpoint(checkpoint, true);
+		}
+		Parameters.apply(sim, fixed);
+		Parameters.apply(sim, params);
+		if (aggregators != null) {
+			sim.attachSink(aggregators.get(point).replicate());
+		} else if (outputDir == null) {
+			sim.attachSink(new NullSink());
+		} else {
+			sim.attachSink(TextSink.file(new File(outputDir, "point" + point + "_seed" + seed + ".tsv").getPath()));
+		}
+		long done = PDWASimHeadless.run(sim, steps);
+		int[] counts = new int[Strategy.count()];
+		sim.acquirePopulation().getCounts(counts);
+		return new Result(point, params, seed, done, sim.acquireTermination(), counts);
+	}
+
+	/**
+	 * Print the aggregated table: one row per replicate with the swept parameter values, seed, steps completed, why the replicate ended and final count of each strategy.
+	 * @param results results from {@link #run()}
+	 * @param out stream to print to
+	 */
+	public void printTable(List<Result> results, PrintStream out) {
+		StringBuilder sb = new StringBuilder("point");
+		for (String name : grid.keySet()) {
+			sb.append('\t').append(name);
+		}
+		sb.append("\tseed\tsteps\ttermination");
+		for (Strategy s : Strategy.values()) {
+			sb.append('\t').append(s);
+		}
+		out.println(sb);
+		for (Result r : results) {
+			sb.setLength(0);
+			sb.append(r.point);
+			for (String name : grid.keySet()) {
+				sb.append('\t').append(r.params.getProperty(name));
+			}
+			sb.append('\t').append(r.seed).append('\t').append(r.steps).append('\t').append(r.termination);
+			for (int c : r.counts) {
+				sb.append('\t').append(c);
+			}
+			out.println(sb);
+		}
+		return;
+	}
+
+	/**
+	 * Print the table of statistics across seeds gathered by the last {@link #run()}: one row per parameter point and sampled step, with the swept parameter values, the step, and the columns of
+	 * {@link ReplicateAggregator#columns()}.
+	 * @param out stream to print to
+	 */
+	public void printAggregates(PrintStream out) {
+		if (aggregators == null) {
+			throw new RuntimeException("The sweep was not run with aggregation");
+		}
+		StringBuilder sb = new StringBuilder("point");
+		for (String name : grid.keySet()) {
+			sb.append('\t').append(name);
+		}
+		sb.append("\tstep");
+		String[] columns = new String[0];
+		for (ReplicateAggregator a : aggregators) {
+			if (a.columns().length > 0) {
+				columns = a.columns();
+				break;
+			}
+		}
+		for (String c : columns) {
+			sb.append('\t').append(c);
+		}
+		out.println(sb);
+		List<Properties> points = points();
+		for (int p = 0; p < aggregators.size(); p++) {
+			sb.setLength(0);
+			sb.append(p);
+			for (String name : grid.keySet()) {
+				sb.append('\t').append(points.get(p).getProperty(name));
+			}
+			sb.append('\t');
+			aggregators.get(p).printRows(out, sb.toString());
+		}
+		return;
+	}
+
+	public static void main(String[] args) {
+		ParameterSweep sweep = new ParameterSweep();
+		String aggregate = null;
+		double[] quantiles = ReplicateAggregator.DEFAULT_QUANTILES;
+		for (int i = 0; i < args.length; i++) {
+			if (!args[i].startsWith("-") || i + 1 >= args.length) {
+				usage("Expected -name value pairs but found: " + args[i]);
+			}
+			String name = args[i].substring(1);
+			String value = args[++i];
+			if (name.equals("sweep")) {
+				int eq = value.indexOf('=');
+				if (eq < 0) {
+					usage("Expected -sweep name=v1,v2,... but found: " + value);
+				}
+				List<String> values = new ArrayList<>();
+				for (String v : value.substring(eq + 1).split(",")) {
+					values.add(v.trim());
+				}
+				sweep.addSweep(value.substring(0, eq), values);
+			} else if (name.equals("seeds")) {
+				sweep.setSeeds(parseSeeds(value));
+			} else if (name.equals("threads")) {
+				sweep.setThreads(Integer.parseInt(value));
+			} else if (name.equals("steps")) {
+				sweep.setSteps(Long.parseLong(value));
+			} else if (name.equals("out")) {
+				sweep.setOutputDir(new File(value));
+			} else if (name.equals("aggregate")) {
+				aggregate = value;
+			} else if (name.equals("quantiles")) {
+				String[] parts = value.split(",");
+				quantiles = new double[parts.length];
+				for (int q = 0; q < parts.length; q++) {
+					quantiles[q] = Double.parseDouble(parts[q].trim());
+				}
+			} else if (name.equals("restore")) {
+				sweep.setCheckpoint(Checkpoint.load(value));
+			} else if (name.equals("params")) {
+				Properties p = Parameters.load(value);
+				for (String key : p.stringPropertyNames()) {
+					sweep.addFixed(key, p.getProperty(key));
+				}
+			} else if (Parameters.isParameter(name)) {
+				sweep.addFixed(name, value);
+			} else {
+				usage("Unknown parameter: " + name);
+			}
+		}
+		if (aggregate != null) {
+			if (sweep.outputDir != null) {
+				usage("Replicates can be written with -out or aggregated with -aggregate, but not both");
+			}
+			sweep.setAggregateQuantiles(quantiles);
+		}
+		long start = System.nanoTime();
+		List<Result> results = sweep.run();
+		double seconds = (System.nanoTime() - start) / 1e9;
+		sweep.printTable(results, System.out);
+		if (aggregate != null) {
+			try (PrintStream out = new PrintStream(aggregate)) {
+				sweep.printAggregates(out);
+			} catch (FileNotFoundException e) {
+				throw new RuntimeException("Unable to write aggregate file: " + aggregate, e);
+			}
+		}
+		System.err.println("replicates=" + results.size() + "; threads=" + sweep.threads + "; seconds=" + seconds);
+		return;
+	}
+
+	/**
+	 * Parse a seed list, either comma separated (<i>1,5,9</i>), an inclusive range (<i>1..50</i>), or a mix of both.
+	 * @param text seed list
+	 * @return seeds in the order given
+	 */
+	static long[] parseSeeds(String text) {
+		List<Long> list = new ArrayList<>();
+		for (String part : text.split(",")) {
+			part = part.trim();
+			int range = part.indexOf("..");
+			if (range < 0) {
+				list.add(Long.parseLong(part));
+			} else {
+				long from = Long.parseLong(part.substring(0, range));
+				long to = Long.parseLong(part.substring(range + 2));
+				for (long s = from; s <= to; s++) {
+					list.add(s);
+				}
+			}
+		}
+		long[] seeds = new long[list.size()];
+		for (int i = 0; i < seeds.length; i++) {
+			seeds[i] = list.get(i);
+		}
+		return seeds;
+	}
+
+	private static void usage(String problem) {
+		Parameters.usage(problem, "java simulation.ParameterSweep -seeds 1..50 [-sweep name=v1,v2,... ...] [-threads n] [-steps n] [-out dir | -aggregate file.tsv [-quantiles q1,q2,...]] [-params file.properties] [-restore file] [-parameterName value ...]");
+		return;
+	}
+
+	/**
+	 * Final state of one replicate.
+	 */
+	public static class Result {
+		final int point;
+		final Properties params;
+		final long seed;
+		final long steps;
+		final Termination termination;
+		final int[] counts;
+
+		Result(int point, Properties params, long seed, long steps, Termination termination, int[] counts) {
+			this.point = point;
+			this.params = params;
+			this.seed = seed;
+			this.steps = steps;
+			this.termination = termination;
+			this.counts = counts;
+		}
+	}
+
+}
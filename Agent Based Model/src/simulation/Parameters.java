@@ -0,0 +1,194 @@
+package simulation;
+
+import java.beans.BeanInfo;
+import java.beans.IntrospectionException;
+import java.beans.Introspector;
+import java.beans.PropertyDescriptor;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.Arrays;
+import java.util.Properties;
+
+/**
+ * Applies named parameter values to a simulation. Names are the same bean properties shown in the MASON inspector (for example <i>errorRate</i>, <i>playRadius</i> or <i>nNaiveC</i>), so anything settable in the
+ * GUI can be set from the command line or a properties file.
+ */
+public class Parameters {
+
+	private Parameters() {
+	}
+
+	/**
+	 * Load a properties file.
+	 * @param path path to the file
+	 * @return the loaded properties
+	 */
+	public static Properties load(String path) {
+		Properties props = new Properties();
+		try (InputStream in = new FileInputStream(path)) {
+			props.load(in);
+		} catch (IOException e) {
+			throw new RuntimeException("Unable to read parameter file: " + path, e);
+		}
+		return props;
+	}
+
+	/**
+	 * Remove an option that is not a simulation parameter, such as a benchmark's step count, from a set of parameters, leaving only simulation parameters behind.
+	 * @param props parameter names and values
+	 * @param name option name
+	 * @param defaultValue value to return if the option is not given
+	 * @return the option's value, or the default
+	 */
+	public static String take(Properties props, String name, String defaultValue) {
+		String value = (String)props.remove(name);
+		return value == null ? defaultValue : value;
+	}
+
+	/**
+	 * Read <code>-name value</code> pairs from a command line into a set of parameters, replacing any defaults already there. Every name must be a simulation parameter or one of the program's own options,
+	 * which it then removes with {@link #take(Properties, String, String)}. If an argument does not start with "-", has no value after it or names nothing known, the problem and the program's usage are printed
+	 * and the program exits.
+	 * @param args command line arguments
+	 * @param props parameters to add to, holding any defaults
+	 * @param usage usage line, such as <code>java benchmarks.EngineBenchmark [-seeds n] [-parameterName value ...]</code>
+	 * @param options names of the program's own options
+	 */
+	public static void parseArgs(String[] args, Properties props, String usage, String... options) {
+		for (int i = 0; i < args.length; i += 2) {
+			if (!args[i].startsWith("-") || args[i].length() == 1 || i + 1 >= args.length) {
+				usage("Expected -name value pairs but found: " + args[i], usage);
+			}
+			String name = args[i].substring(1);
+			if (!isParameter(name) && !Arrays.asList(options).contains(name)) {
+				usage("Unknown parameter: " + name, usage);
+			}
+			props.setProperty(name, args[i + 1]);
+		}
+		return;
+	}
+
+	/**
+	 * Report a problem with the command line, print the program's usage and exit with status 1.
+	 * @param problem what was wrong
+	 * @param usage usage line
+	 */
+	public static void usage(String problem, String usage) {
+		System.err.println(problem);
+		System.err.println("Usage: " + usage);
+		System.exit(1);
+		return;
+	}
+
+	/**
+	 * Apply every entry of the given properties to the simulation.
+	 * @param sim simulation to configure
+	 * @param props parameter names and values
+	 */
+	public static void apply(PDWASim sim, Properties props) {
+		for (String name : props.stringPropertyNames()) {
+			set(sim, name, props.getProperty(name).trim());
+		}
+		return;
+	}
+
+	/**
+	 * Set a single named parameter on the simulation, converting the value to the type of the property.
+	 * @param sim simulation to configure
+	 * @param name property name
+	 * @param value property value as text
+	 */
+	public static void set(PDWASim sim, String name, String value) {
+		Method setter = findSetter(name);
+		Class<?> type = setter.getParameterTypes()[0];
+		try {
+			setter.invoke(sim, convert(type, value));
+		} catch (IllegalAccessException | InvocationTargetException e) {
+			throw new RuntimeException("Unable to set parameter " + name + " to " + value, e);
+		}
+		return;
+	}
+
+	/**
+	 * Describe the current value of every settable parameter of the simulation, for recording alongside its output.
+	 * @param sim simulation to describe
+	 * @return parameter names and values as text
+	 */
+	public static Properties describe(PDWASim sim) {
+		Properties props = new Properties();
+		for (PropertyDescriptor p : descriptors()) {
+			if (p.getReadMethod() == null || p.getWriteMethod() == null) {
+				continue;
+			}
+			try {
+				props.setProperty(p.getName(), String.valueOf(p.getReadMethod().invoke(sim)));
+			} catch (IllegalAccessException | InvocationTargetException e) {
+				throw new RuntimeException("Unable to read parameter " + p.getName(), e);
+			}
+		}
+		return props;
+	}
+
+	/**
+	 * Is there a settable parameter with the given name?
+	 * @param name property name
+	 * @return true if the name can be passed to {@link #set(PDWASim, String, String)}
+	 */
+	public static boolean isParameter(String name) {
+		return lookup(name) != null;
+	}
+
+	private static Method findSetter(String name) {
+		Method setter = lookup(name);
+		if (setter == null) {
+			throw new RuntimeException("Unknown simulation parameter: " + name);
+		}
+		return setter;
+	}
+
+	private static PropertyDescriptor[] descriptors() {
+		BeanInfo info;
+		try {
+			info = Introspector.getBeanInfo(PDWASim.class);
+		} catch (IntrospectionException e) {
+			throw new RuntimeException("Unable to inspect simulation parameters", e);
+		}
+		return info.getPropertyDescriptors();
+	}
+
+	private static Method lookup(String name) {
+		for (PropertyDescriptor p : descriptors()) {
+			if (p.getName().equals(name) && p.getWriteMethod() != null) {
+				return p.getWriteMethod();
+			}
+		}
+		return null;
+	}
+
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	private static Object convert(Class<?> type, String value) {
+		if (type == int.class) {
+			return Integer.valueOf(value);
+		}
+		if (type == long.class) {
+			return Long.valueOf(value);
+		}
+		if (type == double.class) {
+			return Double.valueOf(value);
+		}
+		if (type == boolean.class) {
+			return Boolean.valueOf(value);
+		}
+		if (type.isEnum()) {
+			return Enum.valueOf((Class<Enum>)type, value);
+		}
+		if (type == String.class) {
+			return value;
+		}
+		throw new RuntimeException("Parameters of type " + type.getName() + " can not be set from text");
+	}
+
+}
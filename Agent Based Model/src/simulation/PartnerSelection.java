@@ -0,0 +1,22 @@
+package simulation;
+
+/**
+ * How an agent picks a partner from among the unplayed agents within its play radius.
+ */
+public enum PartnerSelection {
+	/**
+	 * The original rule: list the neighborhood's agents (in the order MASON lists Moore neighbors), start at a random position in the list, and take the first unplayed agent after it, wrapping around. Every
+	 * cell of the neighborhood is looked at, and the pick is not uniform: an agent is more likely to be chosen the more played agents (or the agent itself) come just before it in the list.
+	 */
+	SCAN,
+	/**
+	 * Probe random cells of the neighborhood, taking the first unplayed agent found; if {@link #MAX_PROBES} probes all miss, count the unplayed agents and pick one of them at random. Every unplayed neighbor
+	 * is equally likely to be chosen, and at moderate densities only a few cells are looked at, however large the radius. Uses the dense occupancy grid, which the agent engine then always keeps.
+	 */
+	SAMPLED;
+
+	/**
+	 * Number of random cells {@link #SAMPLED} tries before falling back to counting.
+	 */
+	public static final int MAX_PROBES = 16;
+}
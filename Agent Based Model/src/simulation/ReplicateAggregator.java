@@ -0,0 +1,238 @@
+package simulation;
+
+import java.io.PrintStream;
+import java.math.BigInteger;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+import output.MetricsSink;
+
+/**
+ * Summarizes the observer data of many replicates of one parameter point as they run, without keeping any replicate's data: for every sampled step and column, the number of replicates that reached the step,
+ * and the mean, standard deviation and chosen quantiles of the column's value across them. Means and standard deviations are worked out when printing from exact sums of the values and of their squares, and
+ * quantiles are read exactly from a {@link ValueHistogram}, so memory grows with the number of steps and columns and the spread of the values, but not with the number of replicates.
+ * <p>
+ * Each replicate writes to its own sink from {@link #replicate()}, and replicates may run concurrently: each step's statistics are updated under their own lock, and replicates are usually at different steps.
+ * Nothing held depends on the order the values arrive in, so the table is the same however many threads the replicates ran on. Aggregators of the same columns, such as those of separate runs of the same point,
+ * can be combined with {@link #merge(ReplicateAggregator)}.
+ */
+public class ReplicateAggregator {
+
+	public static final double[] DEFAULT_QUANTILES = { 0.05, 0.25, 0.5, 0.75, 0.95 };
+
+	private final double[] quantiles;
+	private final ConcurrentSkipListMap<Long, StepStats> steps = new ConcurrentSkipListMap<>();
+	private String[] columns;
+
+	public ReplicateAggregator() {
+		this(DEFAULT_QUANTILES);
+	}
+
+	/**
+	 * Make an aggregator that reports the given quantiles.
+	 * @param quantiles quantiles in [0, 1], in the order their columns are written
+	 */
+	public ReplicateAggregator(double[] quantiles) {
+		for (double q : quantiles) {
+			if (!(q >= 0 && q <= 1)) {
+				throw new RuntimeException("Quantiles must be between 0 and 1: " + q);
+			}
+		}
+		this.quantiles = quantiles.clone();
+	}
+
+	/**
+	 * Get a sink for one replicate's data. Every replicate must have the same columns.
+	 * @return new sink
+	 */
+	public MetricsSink replicate() {
+		return new MetricsSink() {
+			@Override
+			public void open(String[] columns) {
+				setColumns(columns);
+				return;
+			}
+
+			@Override
+			public void record(long step, int[] values) {
+				stats(step).record(values);
+				return;
+			}
+
+			@Override
+			public void close(Termination reason, long steps) {
+			}
+		};
+	}
+
+	private synchronized void setColumns(String[] columns) {
+		if (this.columns == null) {
+			this.columns = columns.clone();
+		} else if (!Arrays.equals(this.columns, columns)) {
+			throw new RuntimeException("Replicates have different columns: " + Arrays.toString(this.columns) + " and " + Arrays.toString(columns));
+		}
+		return;
+	}
+
+	private StepStats stats(long step) {
+		StepStats s = steps.get(step);
+		if (s == null) {
+			s = steps.computeIfAbsent(step, k -> new StepStats(columns.length));
+		}
+		return s;
+	}
+
+	/**
+	 * Add the statistics of another aggregator of the same columns to this one, as if its replicates had written here.
+	 * @param other aggregator to add; must not be receiving data
+	 */
+	public void merge(ReplicateAggregator other) {
+		if (other.columns == null) {
+			return;
+		}
+		setColumns(other.columns);
+		for (Map.Entry<Long, StepStats> e : other.steps.entrySet()) {
+			stats(e.getKey()).merge(e.getValue());
+		}
+		return;
+	}
+
+	/**
+	 * Get the names of the columns {@link #printRows(PrintStream, String)} writes after the step: the number of replicates, then for each data column its mean, standard deviation and quantiles
+	 * (<i>column</i>Mean, <i>column</i>Sd, and <i>column</i>Q50 for the median, <i>column</i>Q5 for the 0.05 quantile and so on).
+	 * @return new array of column names, or an empty array if no replicate has opened its sink
+	 */
+	public String[] columns() {
+		if (columns == null) {
+			return new String[0];
+		}
+		String[] names = new String[1 + columns.length * (2 + quantiles.length)];
+		int i = 0;
+		names[i++] = "replicates";
+		for (String c : columns) {
+			names[i++] = c + "Mean";
+			names[i++] = c + "Sd";
+			for (double q : quantiles) {
+				names[i++] = c + "Q" + quantileLabel(q);
+			}
+		}
+		return names;
+	}
+
+	/**
+	 * Label a quantile by its percentage, without a trailing ".0": 0.5 is 50, 0.025 is 2.5.
+	 */
+	private static String quantileLabel(double q) {
+		double percent = q * 100;
+		return percent == Math.rint(percent) ? Long.toString((long)percent) : Double.toString(percent);
+	}
+
+	/**
+	 * Print the aggregate table with a header: one tab-separated row per step, in step order, with the columns given by {@link #columns()}.
+	 * @param out stream to print to
+	 */
+	public void print(PrintStream out) {
+		StringBuilder sb = new StringBuilder("step");
+		for (String c : columns()) {
+			sb.append('\t').append(c);
+		}
+		out.println(sb);
+		printRows(out, "");
+		return;
+	}
+
+	/**
+	 * Print the aggregate rows without a header, each starting with the given prefix and then the step, for tables that combine several aggregators.
+	 * @param out stream to print to
+	 * @param prefix text to start each row with, such as the parameter values and a tab, or empty
+	 */
+	public void printRows(PrintStream out, String prefix) {
+		StringBuilder sb = new StringBuilder();
+		for (Map.Entry<Long, StepStats> e : steps.entrySet()) {
+			StepStats s = e.getValue();
+			sb.setLength(0);
+			sb.append(prefix).append(e.getKey());
+			synchronized (s) {
+				sb.append('\t').append(s.n);
+				for (int c = 0; c < s.sum.length; c++) {
+					sb.append('\t').append(s.getMean(c));
+					sb.append('\t').append(s.getSd(c));
+					for (double q : quantiles) {
+						sb.append('\t').append(s.histograms[c].getQuantile(q));
+					}
+				}
+			}
+			out.println(sb);
+		}
+		return;
+	}
+
+	/**
+	 * Number of sampled steps for which statistics are held.
+	 * @return step count
+	 */
+	public int size() {
+		return steps.size();
+	}
+
+	/**
+	 * Running statistics of every column at one step.
+	 */
+	private static class StepStats {
+		long n;
+		final long[] sum;
+		final long[] sumSquares;
+		final ValueHistogram[] histograms;
+
+		StepStats(int columns) {
+			sum = new long[columns];
+			sumSquares = new long[columns];
+			histograms = new ValueHistogram[columns];
+			for (int c = 0; c < columns; c++) {
+				histograms[c] = new ValueHistogram();
+			}
+		}
+
+		/**
+		 * Add one replicate's row. The sums are exact, and fail rather than overflow.
+		 */
+		synchronized void record(int[] values) {
+			n++;
+			for (int c = 0; c < sum.length; c++) {
+				long v = values[c];
+				sum[c] = Math.addExact(sum[c], v);
+				sumSquares[c] = Math.addExact(sumSquares[c], v * v);
+				histograms[c].record(values[c]);
+			}
+			return;
+		}
+
+		synchronized void merge(StepStats other) {
+			n += other.n;
+			for (int c = 0; c < sum.length; c++) {
+				sum[c] = Math.addExact(sum[c], other.sum[c]);
+				sumSquares[c] = Math.addExact(sumSquares[c], other.sumSquares[c]);
+				histograms[c].merge(other.histograms[c]);
+			}
+			return;
+		}
+
+		double getMean(int c) {
+			return n == 0 ? 0 : (double)sum[c] / n;
+		}
+
+		/**
+		 * Sample standard deviation, from n * sum of squares - sum^2, worked out exactly before the one rounding to a double.
+		 */
+		double getSd(int c) {
+			if (n < 2) {
+				return 0;
+			}
+			BigInteger s = BigInteger.valueOf(sum[c]);
+			BigInteger numerator = BigInteger.valueOf(n).multiply(BigInteger.valueOf(sumSquares[c])).subtract(s.multiply(s));
+			return Math.sqrt(numerator.doubleValue() / ((double)n * (n - 1)));
+		}
+	}
+
+}
@@ -0,0 +1,177 @@
+package simulation;
+
+import java.lang.management.ManagementFactory;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import agents.PhaseTimes;
+import agents.PopulationRegistry;
+import agents.Strategy;
+
+/**
+ * Exposes a running simulation through JMX, registered on the platform MBean server as <code>PDWASim:type=Simulation,id=<i>n</i>,seed=<i>seed</i></code> while the run lasts. Everything is read from the
+ * simulation only when a client asks, so an unwatched run pays nothing for it beyond counting births and deaths; rates are worked out from the change since they were last sampled, at most once a second.
+ * Phase timings are only collected while phase timing is on, which a client can switch from here.
+ */
+public class SimulationMonitor implements SimulationMonitorMXBean {
+
+	private static final long SAMPLE_NANOS = 1000000000L;
+	private static final AtomicInteger instances = new AtomicInteger();
+
+	private final PDWASim sim;
+	private ObjectName name;
+	private long sampleNanos;		// when the rates were last sampled, and the counts then
+	private long sampleStep;
+	private long sampleBirths;
+	private long sampleDeaths;
+	private double stepsPerSecond;
+	private double birthsPerStep;
+	private double deathsPerStep;
+
+	/**
+	 * Make a monitor for a simulation that has just been started; rates are first sampled from now.
+	 * @param sim the simulation
+	 */
+	public SimulationMonitor(PDWASim sim) {
+		this.sim = sim;
+		sampleNanos = System.nanoTime();
+		sampleStep = sim.acquireStep();
+		sampleBirths = sim.acquirePopulation().getBirths();
+		sampleDeaths = sim.acquirePopulation().getDeaths();
+	}
+
+	/**
+	 * Register with the platform MBean server.
+	 */
+	public void register() {
+		try {
+			name = new ObjectName("PDWASim:type=Simulation,id=" + instances.incrementAndGet() + ",seed=" + sim.seed());
+			ManagementFactory.getPlatformMBeanServer().registerMBean(this, name);
+		} catch (JMException e) {
+			throw new RuntimeException("Unable to register the simulation monitor", e);
+		}
+		return;
+	}
+
+	/**
+	 * Unregister from the platform MBean server, if registered.
+	 */
+	public void unregister() {
+		if (name == null) {
+			return;
+		}
+		MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+		try {
+			if (server.isRegistered(name)) {
+				server.unregisterMBean(name);
+			}
+		} catch (JMException e) {
+			throw new RuntimeException("Unable to unregister the simulation monitor", e);
+		}
+		name = null;
+		return;
+	}
+
+	@Override
+	public long getStep() {
+		return sim.acquireStep();
+	}
+
+	@Override
+	public synchronized double getStepsPerSecond() {
+		sample();
+		return stepsPerSecond;
+	}
+
+	@Override
+	public int getPopulation() {
+		return sim.acquirePopulation().getTotal();
+	}
+
+	@Override
+	public Map<String, Integer> getStrategyCounts() {
+		PopulationRegistry population = sim.acquirePopulation();
+		Map<String, Integer> counts = new LinkedHashMap<>();
+		for (Strategy s : Strategy.values()) {
+			counts.put(s.name(), population.getCount(s.ordinal()));
+		}
+		return counts;
+	}
+
+	@Override
+	public long getBirths() {
+		return sim.acquirePopulation().getBirths();
+	}
+
+	@Override
+	public long getDeaths() {
+		return sim.acquirePopulation().getDeaths();
+	}
+
+	@Override
+	public synchronized double getBirthsPerStep() {
+		sample();
+		return birthsPerStep;
+	}
+
+	@Override
+	public synchronized double getDeathsPerStep() {
+		sample();
+		return deathsPerStep;
+	}
+
+	@Override
+	public Map<String, Long> getPhaseNanos() {
+		PhaseTimes times = sim.acquirePhaseTimes();
+		Map<String, Long> nanos = new LinkedHashMap<>();
+		for (int p = 0; p < PhaseTimes.NAMES.length; p++) {
+			nanos.put(PhaseTimes.NAMES[p], times.getNanos(p));
+		}
+		return nanos;
+	}
+
+	@Override
+	public boolean isPhaseTiming() {
+		return sim.acquirePhaseTimes().isEnabled();
+	}
+
+	@Override
+	public void setPhaseTiming(boolean phaseTiming) {
+		sim.acquirePhaseTimes().setEnabled(phaseTiming);
+		return;
+	}
+
+	@Override
+	public String getTermination() {
+		Termination t = sim.acquireTermination();
+		return t == null ? null : t.name();
+	}
+
+	/**
+	 * Work out the rates from the change since they were last sampled, unless that was less than a second ago, so clients polling quickly (or several attributes read together) see steady values.
+	 */
+	private void sample() {
+		long now = System.nanoTime();
+		if (now - sampleNanos < SAMPLE_NANOS) {
+			return;
+		}
+		long step = sim.acquireStep();
+		long births = sim.acquirePopulation().getBirths();
+		long deaths = sim.acquirePopulation().getDeaths();
+		long steps = step - sampleStep;
+		stepsPerSecond = steps / ((now - sampleNanos) / 1e9);
+		birthsPerStep = steps == 0 ? 0 : (double)(births - sampleBirths) / steps;
+		deathsPerStep = steps == 0 ? 0 : (double)(deaths - sampleDeaths) / steps;
+		sampleNanos = now;
+		sampleStep = step;
+		sampleBirths = births;
+		sampleDeaths = deaths;
+		return;
+	}
+
+}
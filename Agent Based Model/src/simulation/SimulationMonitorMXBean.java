@@ -0,0 +1,67 @@
+package simulation;
+
+import java.util.Map;
+
+/**
+ * Management interface of {@link SimulationMonitor}, for watching a run through JMX (for example with jconsole or VisualVM).
+ */
+public interface SimulationMonitorMXBean {
+
+	/**
+	 * @return steps taken, counting any before the checkpoint the run was restored from
+	 */
+	long getStep();
+
+	/**
+	 * @return steps per second since the rates were last sampled
+	 */
+	double getStepsPerSecond();
+
+	/**
+	 * @return number of agents alive
+	 */
+	int getPopulation();
+
+	/**
+	 * @return number of agents of each strategy
+	 */
+	Map<String, Integer> getStrategyCounts();
+
+	/**
+	 * @return births so far, counting the initial agents
+	 */
+	long getBirths();
+
+	/**
+	 * @return deaths so far
+	 */
+	long getDeaths();
+
+	/**
+	 * @return mean births per step since the rates were last sampled
+	 */
+	double getBirthsPerStep();
+
+	/**
+	 * @return mean deaths per step since the rates were last sampled
+	 */
+	double getDeathsPerStep();
+
+	/**
+	 * @return cumulative nanoseconds spent in each phase of the agents' turns, while phase timing is on
+	 */
+	Map<String, Long> getPhaseNanos();
+
+	boolean isPhaseTiming();
+
+	/**
+	 * @param phaseTiming true to time the phases of the agents' turns from the next step on
+	 */
+	void setPhaseTiming(boolean phaseTiming);
+
+	/**
+	 * @return why the run ended, or null if it is still going
+	 */
+	String getTermination();
+
+}
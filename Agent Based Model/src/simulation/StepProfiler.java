@@ -0,0 +1,174 @@
+package simulation;
+
+import java.io.PrintStream;
+
+import agents.PopulationRegistry;
+import sim.engine.SimState;
+import sim.engine.Steppable;
+import sim.engine.Stoppable;
+
+/**
+ * Opt-in profiler of whole steps: the wall time of every step, and of its two phases, the agents' turns (the engine, at ordering 0) and the {@link agents.Observer} (at ordering 100), is recorded in
+ * {@link LatencyHistogram}s, and the slowest steps are kept along with the population and the births and deaths in them. The profiler is three repeating entries on the schedule that only read the clock:
+ * one before the engine, one between the engine and the observer and one after the observer, so it draws no random numbers and does not change the run.
+ */
+public class StepProfiler {
+
+	public static final int BEGIN_ORDERING = -1;
+	public static final int MARK_ORDERING = 50;
+	public static final int END_ORDERING = 1000;
+	public static final int SLOWEST = 10;
+
+	private final PDWASim sim;
+	private final LatencyHistogram steps = new LatencyHistogram();
+	private final LatencyHistogram engine = new LatencyHistogram();
+	private final LatencyHistogram observer = new LatencyHistogram();
+	private final Stoppable[] stoppers = new Stoppable[3];
+	private long begin;
+	private long mark;
+	private long births;
+	private long deaths;
+	// the slowest steps, unordered; the fastest of them is replaced when a slower one comes along
+	private final long[] slowStep = new long[SLOWEST];
+	private final long[] slowNanos = new long[SLOWEST];
+	private final long[] slowEngine = new long[SLOWEST];
+	private final long[] slowObserver = new long[SLOWEST];
+	private final int[] slowPopulation = new int[SLOWEST];
+	private final long[] slowBirths = new long[SLOWEST];
+	private final long[] slowDeaths = new long[SLOWEST];
+	private int nSlow;
+
+	public StepProfiler(PDWASim sim) {
+		this.sim = sim;
+	}
+
+	/**
+	 * Put the profiler on the simulation's schedule, from the first step. It takes itself off again at the end of the step in which the run terminates.
+	 */
+	public void schedule() {
+		stoppers[0] = sim.schedule.scheduleRepeating(0, BEGIN_ORDERING, new Steppable() {
+			@Override
+			public void step(SimState state) {
+				PopulationRegistry population = sim.acquirePopulation();
+				births = population.getBirths();
+				deaths = population.getDeaths();
+				begin = System.nanoTime();
+				return;
+			}
+		}, 1);
+		stoppers[1] = sim.schedule.scheduleRepeating(0, MARK_ORDERING, new Steppable() {
+			@Override
+			public void step(SimState state) {
+				mark = System.nanoTime();
+				return;
+			}
+		}, 1);
+		stoppers[2] = sim.schedule.scheduleRepeating(0, END_ORDERING, new Steppable() {
+			@Override
+			public void step(SimState state) {
+				endStep(System.nanoTime());
+				return;
+			}
+		}, 1);
+		return;
+	}
+
+	private void endStep(long end) {
+		long total = end - begin;
+		long agents = mark - begin;
+		long observed = end - mark;
+		boolean sampled = sim.acquireStep() % sim.getSampleInterval() == 0;		// the observer only runs on these
+		steps.record(total);
+		engine.record(agents);
+		if (sampled) {
+			observer.record(observed);
+		}
+		if (nSlow < SLOWEST || total > slowNanos[fastestSlow()]) {
+			int i = nSlow < SLOWEST ? nSlow++ : fastestSlow();
+			PopulationRegistry population = sim.acquirePopulation();
+			slowStep[i] = sim.acquireStep();
+			slowNanos[i] = total;
+			slowEngine[i] = agents;
+			slowObserver[i] = sampled ? observed : 0;
+			slowPopulation[i] = population.getTotal();
+			slowBirths[i] = population.getBirths() - births;
+			slowDeaths[i] = population.getDeaths() - deaths;
+		}
+		if (sim.acquireTermination() != null) {
+			for (Stoppable s : stoppers) {
+				s.stop();
+			}
+		}
+		return;
+	}
+
+	private int fastestSlow() {
+		int f = 0;
+		for (int i = 1; i < nSlow; i++) {
+			if (slowNanos[i] < slowNanos[f]) {
+				f = i;
+			}
+		}
+		return f;
+	}
+
+	/**
+	 * Get the histogram of whole-step times.
+	 * @return the histogram
+	 */
+	public LatencyHistogram acquireSteps() {
+		return steps;
+	}
+
+	/**
+	 * Get the histogram of the time the agents' turns took in each step.
+	 * @return the histogram
+	 */
+	public LatencyHistogram acquireEngine() {
+		return engine;
+	}
+
+	/**
+	 * Get the histogram of the time the observer took, in the steps it sampled.
+	 * @return the histogram
+	 */
+	public LatencyHistogram acquireObserver() {
+		return observer;
+	}
+
+	/**
+	 * Print percentiles of each histogram, in milliseconds, then the slowest steps from slowest down.
+	 * @param out stream to print to
+	 */
+	public void report(PrintStream out) {
+		out.println("phase\tsteps\tmean ms\tp50 ms\tp90 ms\tp99 ms\tp99.9 ms\tmax ms");
+		printHistogram(out, "step", steps);
+		printHistogram(out, "engine", engine);
+		printHistogram(out, "observer", observer);
+		out.println("slowest steps:");
+		out.println("step\tms\tengine ms\tobserver ms\tpopulation\tbirths\tdeaths");
+		boolean[] printed = new boolean[nSlow];
+		for (int n = 0; n < nSlow; n++) {
+			int s = -1;
+			for (int i = 0; i < nSlow; i++) {
+				if (!printed[i] && (s < 0 || slowNanos[i] > slowNanos[s])) {
+					s = i;
+				}
+			}
+			printed[s] = true;
+			out.println(slowStep[s] + "\t" + ms(slowNanos[s]) + "\t" + ms(slowEngine[s]) + "\t" + ms(slowObserver[s]) + "\t" + slowPopulation[s] + "\t" + slowBirths[s] + "\t" + slowDeaths[s]);
+		}
+		return;
+	}
+
+	private static void printHistogram(PrintStream out, String name, LatencyHistogram h) {
+		out.println(name + "\t" + h.getCount() + "\t" + ms(h.getMean()) + "\t" + ms(h.getPercentile(50)) + "\t" + ms(h.getPercentile(90)) + "\t" + ms(h.getPercentile(99)) + "\t"
+				+ ms(h.getPercentile(99.9)) + "\t" + ms(h.getMax()));
+		return;
+	}
+
+	private static String ms(double nanos) {
+		return String.format("%.3f", nanos / 1e6);
+	}
+
+}
@@ -0,0 +1,13 @@
+package simulation;
+
+/**
+ * Why a run ended.
+ */
+public enum Termination {
+	STEP_LIMIT,			// ran for the requested number of steps
+	EXTINCTION,			// no agents left
+	SINGLE_STRATEGY,	// only one strategy left, which can never change again (stopOnSingleStrategy)
+	STEADY_STATE,		// no strategy's count moved more than steadyTolerance over steadyWindow steps
+	TIME_BUDGET,		// ran out of wall-clock time (maxSeconds)
+	STOPPED			// finished from outside before any of these, as when stopped in the GUI
+}
@@ -0,0 +1,83 @@
+package simulation;
+
+import java.util.Arrays;
+
+/**
+ * Exact, mergeable histogram of integer values, for quantiles across replicates. Each value between the smallest and largest recorded has its own count, so quantiles are exact and memory depends on the
+ * range of the values rather than on how many were recorded. The observer's columns are counts bounded by the population or the grid, and counts from replicates of one run tend to be close together, so a
+ * histogram usually holds a few dozen values.
+ */
+public class ValueHistogram {
+
+	private int[] counts = new int[0];
+	private int low;		// value of counts[0]
+	private long count;
+
+	/**
+	 * Record one value.
+	 * @param value value
+	 */
+	public void record(int value) {
+		add(value, 1);
+		count++;
+		return;
+	}
+
+	/**
+	 * Add everything recorded in another histogram to this one, as if its values had been recorded here.
+	 * @param other histogram to add
+	 */
+	public void merge(ValueHistogram other) {
+		for (int i = 0; i < other.counts.length; i++) {
+			if (other.counts[i] != 0) {
+				add(other.low + i, other.counts[i]);
+			}
+		}
+		count += other.count;
+		return;
+	}
+
+	/**
+	 * Add to a value's count, widening the range of values kept if necessary.
+	 */
+	private void add(int value, int n) {
+		if (counts.length == 0) {
+			counts = new int[1];
+			low = value;
+		} else if (value < low) {
+			int[] wider = new int[Math.toIntExact(counts.length + (long)low - value)];
+			System.arraycopy(counts, 0, wider, low - value, counts.length);
+			counts = wider;
+			low = value;
+		} else if (value - (long)low >= counts.length) {
+			counts = Arrays.copyOf(counts, Math.toIntExact(value - (long)low + 1));
+		}
+		counts[value - low] += n;
+		return;
+	}
+
+	public long getCount() {
+		return count;
+	}
+
+	/**
+	 * Get a quantile by the nearest-rank method: the smallest recorded value with at least <i>q</i> of the values at or below it.
+	 * @param q quantile in [0, 1]
+	 * @return the value, or 0 if none were recorded
+	 */
+	public int getQuantile(double q) {
+		if (count == 0) {
+			return 0;
+		}
+		long rank = Math.max(1, (long)Math.ceil(q * count));
+		long seen = 0;
+		for (int i = 0; i < counts.length; i++) {
+			seen += counts[i];
+			if (seen >= rank) {
+				return low + i;
+			}
+		}
+		return low + counts.length - 1;
+	}
+
+}